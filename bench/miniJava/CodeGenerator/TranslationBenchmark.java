@@ -0,0 +1,65 @@
+package miniJava.CodeGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.Corpus;
+import miniJava.ErrorReporter;
+import miniJava.AbstractSyntaxTrees.Package;
+
+/**
+ * Time to generate mJAM code for the checked corpus.
+ * Translation decorates the AST it is given, so every invocation gets freshly
+ * prepared ASTs; preparing them is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslationBenchmark {
+
+	@Param({"tests/official_testcases/pa5_tests", "synthetic:500"})
+	public String corpus;
+
+	private List<byte[]> sources;
+	private List<Package> asts;
+
+	@Setup
+	public void load() throws Exception {
+		sources = Corpus.load(corpus);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare() {
+		asts = new ArrayList<Package>();
+		for (byte[] source : sources)
+			asts.add(Corpus.typeCheck(source));
+	}
+
+	@Benchmark
+	public int translate() {
+		int instructions = 0;
+		for (Package ast : asts) {
+			Translation translator = new Translation(ast, new ErrorReporter(null));
+			translator.translate();
+			instructions += translator.getCode().nextInstrAddr();
+		}
+		return instructions;
+	}
+}
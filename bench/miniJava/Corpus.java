@@ -0,0 +1,146 @@
+package miniJava;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.CodeGenerator.Translation;
+import miniJava.ContextualAnalyzer.Identification;
+import miniJava.ContextualAnalyzer.TypeChecking;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.mJAM.Peephole;
+
+/**
+ * Sources the benchmarks run on, and the compiler stages that feed each benchmark.
+ *
+ * A corpus is named by a benchmark parameter:
+ * <ul>
+ * <li>a .java file,</li>
+ * <li>a directory, meaning every .java file under it that compiles, such as
+ *     tests/official_testcases/pa5_tests, or</li>
+ * <li>synthetic:n, a generated program with n classes.</li>
+ * </ul>
+ * Only sources that compile are kept, so that every stage can run on all of them.
+ */
+public final class Corpus {
+
+	public final static String SYNTHETIC = "synthetic:";
+
+	private Corpus() {
+	}
+
+	public static List<byte[]> load(String spec) throws IOException {
+		List<byte[]> sources = new ArrayList<byte[]>();
+		if (spec.startsWith(SYNTHETIC)) {
+			sources.add(synthetic(Integer.parseInt(spec.substring(SYNTHETIC.length()))).getBytes());
+		} else {
+			List<Path> files = new ArrayList<Path>();
+			try (Stream<Path> paths = Files.walk(Paths.get(spec))) {
+				paths.filter(p -> p.toString().endsWith(".java")).sorted().forEach(files::add);
+			}
+			CompilerSession session = new CompilerSession();
+			for (Path file : files) {
+				byte[] source = Files.readAllBytes(file);
+				if (session.compile(source).succeeded())
+					sources.add(source);
+			}
+		}
+		if (sources.isEmpty())
+			throw new IllegalArgumentException("no compilable sources in " + spec);
+		return sources;
+	}
+
+	// STAGES, each run on fresh objects and reporting nothing
+
+	public static Scanner scanner(byte[] source) {
+		return new Scanner(source, new ErrorReporter(null));
+	}
+
+	public static Package parse(byte[] source) {
+		ErrorReporter reporter = new ErrorReporter(null);
+		return new Parser(new Scanner(source, reporter), reporter).parse();
+	}
+
+	public static Package identify(byte[] source) {
+		Package ast = parse(source);
+		new Identification(ast, new ErrorReporter(null)).identify();
+		return ast;
+	}
+
+	public static Package typeCheck(byte[] source) {
+		Package ast = identify(source);
+		new TypeChecking(ast, new ErrorReporter(null)).typeCheck();
+		return ast;
+	}
+
+	public static int[] compile(byte[] source) {
+		Translation translator = new Translation(typeCheck(source), new ErrorReporter(null));
+		translator.translate();
+		return translator.getCode().toArray();
+	}
+
+	/** compiles and then optimizes as CompilerSession does, fusing superinstructions or not */
+	public static int[] optimize(byte[] source, boolean superinstructions) {
+		Translation translator = new Translation(typeCheck(source), new ErrorReporter(null));
+		translator.translate();
+		Peephole.optimize(translator.getCode(), superinstructions);
+		return translator.getCode().toArray();
+	}
+
+	/**
+	 * Generates a program of n classes whose methods exercise loops, arrays,
+	 * fields, calls and object creation.  Running it prints one total.
+	 */
+	public static String synthetic(int n) {
+		StringBuilder program = new StringBuilder();
+		program.append("class Main {\n");
+		program.append("  public static void main(String[] args) {\n");
+		program.append("    int total = 0;\n");
+		for (int k = 0; k < n; k++) {
+			program.append("    C").append(k).append(" c").append(k).append(" = new C").append(k).append("();\n");
+			program.append("    total = total + c").append(k).append(".run(").append(k % 7 + 1).append(");\n");
+		}
+		program.append("    System.out.println(total);\n");
+		program.append("  }\n");
+		program.append("}\n\n");
+
+		for (int k = 0; k < n; k++) {
+			String next = "C" + ((k + 1) % n);
+			program.append("class C").append(k).append(" {\n");
+			program.append("  int count;\n");
+			program.append("  int[] values;\n");
+			program.append("  ").append(next).append(" next;\n\n");
+			program.append("  public int run(int n) {\n");
+			program.append("    values = new int[n + 4];\n");
+			program.append("    int i = 0;\n");
+			program.append("    while (i < values.length) {\n");
+			program.append("      values[i] = i * ").append(k % 13 + 1).append(" + n;\n");
+			program.append("      i = i + 1;\n");
+			program.append("    }\n");
+			program.append("    int sum = 0;\n");
+			program.append("    for (int j = 0; j < values.length; j = j + 1) {\n");
+			program.append("      if (values[j] > n && !(j == 2) || count < 0)\n");
+			program.append("        sum = sum + helper(values[j]);\n");
+			program.append("      else\n");
+			program.append("        sum = sum - 1;\n");
+			program.append("    }\n");
+			program.append("    count = count + 1;\n");
+			program.append("    if (next == null) {\n");
+			program.append("      next = new ").append(next).append("();\n");
+			program.append("    }\n");
+			program.append("    return sum;\n");
+			program.append("  }\n\n");
+			program.append("  private int helper(int x) {\n");
+			program.append("    return x / 2 + x * 3 - ").append(k % 5).append(";\n");
+			program.append("  }\n");
+			program.append("}\n\n");
+		}
+		return program.toString();
+	}
+}
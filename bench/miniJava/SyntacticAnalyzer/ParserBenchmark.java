@@ -0,0 +1,47 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import miniJava.Corpus;
+
+/**
+ * Time to scan and parse the corpus into ASTs, reading from memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({"tests/official_testcases/pa5_tests", "synthetic:500"})
+	public String corpus;
+
+	private List<byte[]> sources;
+
+	@Setup
+	public void load() throws Exception {
+		sources = Corpus.load(corpus);
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) {
+		for (byte[] source : sources)
+			blackhole.consume(Corpus.parse(source));
+	}
+}
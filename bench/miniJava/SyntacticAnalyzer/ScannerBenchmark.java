@@ -0,0 +1,71 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.Corpus;
+
+/**
+ * Time to scan every token of the corpus, reading from memory: as Token
+ * objects, through the allocation-free next(), and into a TokenStream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+
+	@Param({"tests/official_testcases/pa5_tests", "synthetic:500"})
+	public String corpus;
+
+	private List<byte[]> sources;
+
+	@Setup
+	public void load() throws Exception {
+		sources = Corpus.load(corpus);
+	}
+
+	@Benchmark
+	public int scan() {
+		int tokens = 0;
+		for (byte[] source : sources) {
+			Scanner scanner = Corpus.scanner(source);
+			while (scanner.scan().kind != TokenKind.EOT)
+				tokens++;
+		}
+		return tokens;
+	}
+
+	@Benchmark
+	public int next() {
+		int tokens = 0;
+		for (byte[] source : sources) {
+			Scanner scanner = Corpus.scanner(source);
+			while (scanner.next() != TokenKind.EOT)
+				tokens++;
+		}
+		return tokens;
+	}
+
+	@Benchmark
+	public int tokenize() {
+		int tokens = 0;
+		for (byte[] source : sources)
+			tokens += Corpus.scanner(source).tokenize().size();
+		return tokens;
+	}
+}
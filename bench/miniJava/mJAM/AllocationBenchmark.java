@@ -0,0 +1,82 @@
+package miniJava.mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.CompiledProgram;
+import miniJava.CompilerSession;
+
+/**
+ * Time to run a program that allocates an object and an int[] of arrayLength
+ * elements in each of 100000 iterations, keeping none of them.  Without
+ * garbage collection the heap grows to hold them all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+	@Param({"4", "64", "1024"})
+	public int arrayLength;
+
+	@Param({"false", "true"})
+	public boolean gc;
+
+	private CompiledProgram program;
+	private PrintStream discard;
+
+	@Setup
+	public void compile() {
+		StringBuilder source = new StringBuilder();
+		source.append("class Main {\n");
+		source.append("  public static void main(String[] args) {\n");
+		source.append("    int total = 0;\n");
+		source.append("    for (int i = 0; i < 100000; i = i + 1) {\n");
+		source.append("      int[] values = new int[").append(arrayLength).append("];\n");
+		source.append("      values[0] = i;\n");
+		source.append("      Cell cell = new Cell();\n");
+		source.append("      cell.values = values;\n");
+		source.append("      total = total + cell.values.length;\n");
+		source.append("    }\n");
+		source.append("    System.out.println(total);\n");
+		source.append("  }\n");
+		source.append("}\n\n");
+		source.append("class Cell {\n");
+		source.append("  int[] values;\n");
+		source.append("  Cell next;\n");
+		source.append("}\n");
+		program = new CompilerSession().compile(source.toString().getBytes());
+		if (!program.succeeded())
+			throw new IllegalStateException("allocation program failed " + program.getFailedPhase());
+		discard = new PrintStream(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public long run() {
+		VirtualMachine vm = program.newMachine();
+		vm.setDataStore(VirtualMachine.DEFAULT_STACK_SIZE, 1 << 16, true);
+		vm.setGarbageCollection(gc);
+		vm.setInput(new ByteArrayInputStream(new byte[0]));
+		vm.setOutput(discard);
+		if (vm.run() != VirtualMachine.halted)
+			throw new IllegalStateException(VirtualMachine.describeStatus(vm.getStatus()));
+		return vm.getWordsAllocated();
+	}
+}
@@ -0,0 +1,96 @@
+package miniJava.mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.CompiledProgram;
+import miniJava.CompilerSession;
+
+/**
+ * Time to run a loop of 200000 iterations that does little but arithmetic and
+ * comparisons, with the operators compiled to ALU operations (alu) or, as
+ * before, to calls of the primitives (primitive).  The program runs either
+ * decoded or one instruction at a time, as when it is profiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArithmeticBenchmark {
+
+	@Param({"alu", "primitive"})
+	public String operators;
+
+	@Param({"false", "true"})
+	public boolean stepping;
+
+	private VirtualMachine image;
+	private PrintStream discard;
+
+	@Setup
+	public void compile() {
+		StringBuilder source = new StringBuilder();
+		source.append("class Main {\n");
+		source.append("  public static void main(String[] args) {\n");
+		source.append("    int sum = 0;\n");
+		source.append("    int i = 0;\n");
+		source.append("    while (i < 200000) {\n");
+		source.append("      sum = sum + i * 3 - i / 7 - sum / 2;\n");
+		source.append("      if (i - i / 2 * 2 == 0 && sum > 5 || !(sum != 1))\n");
+		source.append("        sum = -sum + 2 * sum - 1;\n");
+		source.append("      i = i + 1;\n");
+		source.append("    }\n");
+		source.append("    System.out.println(sum);\n");
+		source.append("  }\n");
+		source.append("}\n");
+		CompiledProgram program = new CompilerSession().compile(source.toString().getBytes());
+		if (!program.succeeded())
+			throw new IllegalStateException("arithmetic program failed " + program.getFailedPhase());
+		int[] code = program.getCode().toArray();
+		if (operators.equals("primitive"))
+			callPrimitives(code);
+		image = new VirtualMachine(code, program.getCode().getTypes(), program.getCode().getDebugInfo());
+		discard = new PrintStream(OutputStream.nullOutputStream());
+	}
+
+	/** Replaces each ALU operation in code with a call of its primitive */
+	private static void callPrimitives(int[] code) {
+		for (int i = 0; i < code.length; i += Machine.instrWords) {
+			Machine.Op op = Machine.intToOp[Machine.opOf(code[i])];
+			for (Machine.Prim prim : Machine.Prim.values()) {
+				if (Machine.aluOp(prim) == op) {
+					code[i] = Machine.pack(Machine.Op.CALL.ordinal(), 0, Machine.Reg.PB.ordinal());
+					code[i + 1] = prim.ordinal();
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int run() {
+		VirtualMachine vm = new VirtualMachine(image);
+		vm.setInput(new ByteArrayInputStream(new byte[0]));
+		vm.setOutput(discard);
+		if (stepping)
+			vm.setCpuProfiling(Integer.MAX_VALUE);
+		if (vm.run() != VirtualMachine.halted)
+			throw new IllegalStateException(VirtualMachine.describeStatus(vm.getStatus()));
+		return vm.getStatus();
+	}
+}
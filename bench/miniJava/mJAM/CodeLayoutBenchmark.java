@@ -0,0 +1,101 @@
+package miniJava.mJAM;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.CompiledProgram;
+import miniJava.CompilerSession;
+
+/**
+ * Compares fetching and decoding every instruction of a compiled program from
+ * the old one-object-per-instruction code store against the packed int[] one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeLayoutBenchmark {
+
+	@Param({"tests/PA4Test.java"})
+	public String source;
+
+	private Instruction[] objects;
+	private int[] packed;
+	private int size;
+
+	@Setup
+	public void compile() throws Exception {
+		CompiledProgram program = new CompilerSession().compile(source);
+		if (!program.succeeded())
+			throw new IllegalStateException("could not compile " + source);
+
+		CodeStore code = program.getCode();
+		size = code.nextInstrAddr();
+		packed = code.toArray();
+		objects = new Instruction[size];
+		for (int addr = 0; addr < size; addr++) {
+			objects[addr] = code.getInstruction(addr);
+		}
+	}
+
+	@Benchmark
+	public long objectPerInstruction() {
+		long sum = 0;
+		for (int cp = 0; cp < size; cp++) {
+			Instruction currentInstr = objects[cp];
+			int op = currentInstr.op;
+			int r = currentInstr.r;
+			int n = currentInstr.n;
+			int d = currentInstr.d;
+			sum += decode(Machine.intToOp[op], n, r, d);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long packedInts() {
+		long sum = 0;
+		int[] code = packed;
+		for (int cp = 0; cp < size; cp++) {
+			int word = code[cp * Machine.instrWords];
+			int d = code[cp * Machine.instrWords + 1];
+			sum += decode(Machine.intToOp[Machine.opOf(word)], Machine.nOf(word), Machine.rOf(word), d);
+		}
+		return sum;
+	}
+
+	/** stands in for the execute step so that every decoded field is used */
+	private static int decode(Machine.Op operation, int n, int r, int d) {
+		switch (operation) {
+			case LOAD:
+			case LOADA:
+			case STORE:
+			case JUMP:
+			case CALL:
+			case CALLI:
+				return d + r;
+			case JUMPIF:
+			case RETURN:
+				return d + n;
+			case LOADL:
+			case PUSH:
+			case POP:
+				return d;
+			default:
+				return n;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package miniJava.mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.Corpus;
+
+/**
+ * Time to run every compiled program of the corpus to completion on a fresh
+ * VirtualMachine, with a growable heap and output discarded, with and without
+ * garbage collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+	@Param({"tests/official_testcases/pa5_tests", "synthetic:500"})
+	public String corpus;
+
+	@Param({"false", "true"})
+	public boolean gc;
+
+	private List<int[]> programs;
+	private PrintStream discard;
+
+	@Setup
+	public void compile() throws Exception {
+		programs = new ArrayList<int[]>();
+		for (byte[] source : Corpus.load(corpus))
+			programs.add(Corpus.compile(source));
+		discard = new PrintStream(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public int run() {
+		int halted = 0;
+		for (int[] code : programs) {
+			VirtualMachine vm = new VirtualMachine(code);
+			vm.setDataStore(VirtualMachine.DEFAULT_STACK_SIZE, VirtualMachine.DEFAULT_HEAP_SIZE, true);
+			vm.setGarbageCollection(gc);
+			vm.setInput(new ByteArrayInputStream(new byte[0]));
+			vm.setOutput(discard);
+			if (vm.run() == VirtualMachine.halted)
+				halted++;
+		}
+		return halted;
+	}
+}
@@ -0,0 +1,72 @@
+package miniJava.mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import miniJava.Corpus;
+
+/**
+ * Time to run every program of the corpus, optimized by the peephole
+ * optimizer with or without fusing superinstructions.  The programs run
+ * either decoded or one instruction at a time, as when they are profiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuperinstructionBenchmark {
+
+	@Param({"tests/official_testcases/pa5_tests", "synthetic:500"})
+	public String corpus;
+
+	@Param({"false", "true"})
+	public boolean superinstructions;
+
+	@Param({"false", "true"})
+	public boolean stepping;
+
+	private List<VirtualMachine> images;
+	private PrintStream discard;
+
+	@Setup
+	public void compile() throws Exception {
+		images = new ArrayList<VirtualMachine>();
+		for (byte[] source : Corpus.load(corpus))
+			images.add(new VirtualMachine(Corpus.optimize(source, superinstructions)));
+		discard = new PrintStream(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public int run() {
+		int halted = 0;
+		for (VirtualMachine image : images) {
+			VirtualMachine vm = new VirtualMachine(image);
+			vm.setDataStore(VirtualMachine.DEFAULT_STACK_SIZE, VirtualMachine.DEFAULT_HEAP_SIZE, true);
+			vm.setInput(new ByteArrayInputStream(new byte[0]));
+			vm.setOutput(discard);
+			if (stepping)
+				vm.setCpuProfiling(Integer.MAX_VALUE);
+			if (vm.run() == VirtualMachine.halted)
+				halted++;
+		}
+		return halted;
+	}
+}
@@ -0,0 +1,336 @@
+package miniJava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import miniJava.mJAM.VirtualMachine;
+
+/**
+ * compiles and runs a whole directory (or glob) of miniJava sources in one JVM,
+ * and reports which of them behaved as their name says: pass* sources must get
+ * through the chosen stage, fail* sources must be rejected by it.  A source
+ * that crashes the compiler or the machine is rejected with the exception as
+ * its reason, and a program still running after --timeout seconds (10 by
+ * default, 0 for no limit) is stopped and rejected.  The check stage does not
+ * require a main method, which PA3 sources do not have.
+ *
+ * --heap n, --grow and --gc size the heap and turn on heap growth and garbage
+ * collection for every program, as for the Interpreter.
+ *
+ * usage: BatchDriver [--threads n] [--stage parse|check|run] [--timeout s] [--heap n] [--grow] [--gc] [--verbose] [--sequences n] (dir | glob)...
+ *
+ * with --sequences, the programs run one instruction at a time and the n
+ * instruction sequences executed most over all of them are printed, the
+ * candidates for superinstructions.
+ */
+public class BatchDriver {
+  // how far a source has to get to count as passing
+  enum Stage {
+    PARSE("parsing"),                            // PA1, PA2
+    CHECK("parsing", "identification", "type checking"), // PA3
+    RUN("parsing", "identification", "type checking", "code generation"); // PA4, PA5
+
+    final List<String> phases; // compiler phases whose failure rejects a source at this stage
+
+    Stage(String... phases) {
+      this.phases = List.of(phases);
+    }
+  }
+
+  enum Expectation { PASS, FAIL, NONE }
+
+  // outcome of one source
+  static class Result {
+    final Path source;
+    final Expectation expected;
+    boolean passed;        // got through the stage
+    String reason;         // why it was rejected, null if it passed
+    String output = "";    // what the program printed
+    Map<String, Long> sequences = Collections.emptyMap(); // instruction sequences executed, when counted
+    int generatedSize, size; // instructions before and after peephole optimization
+    long compileNanos, runNanos;
+
+    Result(Path source) {
+      this.source = source;
+      String name = source.getFileName().toString();
+      expected = name.startsWith("pass") ? Expectation.PASS
+               : name.startsWith("fail") ? Expectation.FAIL
+               : Expectation.NONE;
+    }
+
+    boolean asExpected() {
+      return expected == Expectation.NONE || passed == (expected == Expectation.PASS);
+    }
+  }
+
+  private final CompilerSession session;
+  private final Stage stage;
+  private final boolean countSequences;
+  private final long timeoutMillis; // 0 for no limit
+  // data store of every machine
+  int heapWords = VirtualMachine.DEFAULT_HEAP_SIZE;
+  boolean growHeap = false, collectGarbage = false;
+  // stops programs that run too long
+  private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+    Thread thread = new Thread(task, "BatchDriver watchdog");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  BatchDriver(Stage stage, boolean countSequences, long timeoutMillis) {
+    this.stage = stage;
+    this.countSequences = countSequences;
+    this.timeoutMillis = timeoutMillis;
+    session = new CompilerSession(null, stage == Stage.RUN);
+  }
+
+  /**
+   * compiles and, for the run stage, runs one source
+   * @return its result, rejected with the exception as reason if the
+   *         compiler or the machine crashed on it
+   */
+  Result check(Path source) {
+    Result result = new Result(source);
+    try {
+      check(result);
+    } catch (RuntimeException | StackOverflowError e) {
+      result.passed = false;
+      result.reason = "aborted: " + e;
+    }
+    return result;
+  }
+
+  private void check(Result result) {
+    long start = System.nanoTime();
+    CompiledProgram program;
+    try {
+      program = session.compile(result.source.toString());
+    } catch (IOException e) {
+      result.compileNanos = System.nanoTime() - start;
+      result.reason = "could not be read";
+      return;
+    }
+    result.compileNanos = System.nanoTime() - start;
+    result.generatedSize = program.getGeneratedSize();
+    result.size = program.getSize();
+
+    if (!program.succeeded() && stage.phases.contains(program.getFailedPhase())) {
+      List<String> errors = program.getErrors();
+      result.reason = "failed " + program.getFailedPhase() + (errors.isEmpty() ? "" : ": " + errors.get(0));
+      return;
+    }
+    if (stage != Stage.RUN) {
+      result.passed = true;
+      return;
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    VirtualMachine vm = program.newMachine();
+    vm.setInput(new ByteArrayInputStream(new byte[0]));
+    vm.setOutput(new PrintStream(output, true));
+    vm.setDataStore(VirtualMachine.DEFAULT_STACK_SIZE, heapWords, growHeap);
+    vm.setGarbageCollection(collectGarbage);
+    if (countSequences)
+      vm.setCpuProfiling(Integer.MAX_VALUE); // counting, rarely sampling
+    ScheduledFuture<?> timeout = timeoutMillis == 0 ? null
+        : watchdog.schedule(vm::stop, timeoutMillis, TimeUnit.MILLISECONDS);
+    start = System.nanoTime();
+    int status;
+    try {
+      status = vm.run();
+    } finally {
+      if (timeout != null)
+        timeout.cancel(false);
+    }
+    result.runNanos = System.nanoTime() - start;
+    result.output = output.toString();
+    if (countSequences)
+      result.sequences = vm.getInstructionSequences();
+    result.passed = status == VirtualMachine.halted;
+    if (status == VirtualMachine.stopped)
+      result.reason = "still running after " + timeoutMillis / 1000.0 + " s";
+    else if (!result.passed)
+      result.reason = VirtualMachine.describeStatus(status);
+  }
+
+  /**
+   * checks every source on a pool of threads
+   * @return the results, in the order of sources
+   */
+  List<Result> checkAll(List<Path> sources, int threads) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Result>> pending = new ArrayList<Future<Result>>();
+      for (Path source : sources)
+        pending.add(pool.submit(() -> check(source)));
+      List<Result> results = new ArrayList<Result>();
+      for (Future<Result> result : pending)
+        results.add(result.get());
+      return results;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * @return the .java files under a directory, or those matching a glob such as
+   *         tests/official_testcases/pa*_tests/*.java, in path order
+   */
+  static List<Path> findSources(String spec) throws IOException {
+    Path root;
+    PathMatcher matcher;
+    int wildcard = indexOfWildcard(spec);
+    if (wildcard < 0) {
+      root = Paths.get(spec);
+      if (!Files.isDirectory(root))
+        return Files.exists(root) ? List.of(root) : Collections.emptyList();
+      matcher = FileSystems.getDefault().getPathMatcher("glob:**.java");
+    } else {
+      int slash = spec.lastIndexOf('/', wildcard);
+      root = Paths.get(slash < 0 ? "." : spec.substring(0, slash + 1));
+      matcher = FileSystems.getDefault().getPathMatcher("glob:" + (slash < 0 ? "./" + spec : spec));
+    }
+    if (!Files.isDirectory(root))
+      return Collections.emptyList();
+    List<Path> sources = new ArrayList<Path>();
+    try (Stream<Path> files = Files.walk(root)) {
+      files.filter(p -> Files.isRegularFile(p) && matcher.matches(p)).sorted().forEach(sources::add);
+    }
+    return sources;
+  }
+
+  private static int indexOfWildcard(String spec) {
+    for (int i = 0; i < spec.length(); i++) {
+      if ("*?[{".indexOf(spec.charAt(i)) >= 0)
+        return i;
+    }
+    return -1;
+  }
+
+  static void printUsage() {
+    System.out.println("usage: BatchDriver [--threads n] [--stage parse|check|run] [--timeout s] [--heap n] [--grow] [--gc] [--verbose] [--sequences n] (dir | glob)...");
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    Stage stage = Stage.RUN;
+    boolean verbose = false;
+    int sequences = 0;
+    double timeout = 10;
+    int heapWords = VirtualMachine.DEFAULT_HEAP_SIZE;
+    boolean grow = false, gc = false;
+    List<Path> sources = new ArrayList<Path>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--threads"))
+          threads = Integer.parseInt(args[++i]);
+        else if (args[i].equals("--stage"))
+          stage = Stage.valueOf(args[++i].toUpperCase());
+        else if (args[i].equals("--timeout"))
+          timeout = Double.parseDouble(args[++i]);
+        else if (args[i].equals("--heap"))
+          heapWords = Integer.parseInt(args[++i]);
+        else if (args[i].equals("--grow"))
+          grow = true;
+        else if (args[i].equals("--gc"))
+          gc = true;
+        else if (args[i].equals("--verbose"))
+          verbose = true;
+        else if (args[i].equals("--sequences"))
+          sequences = Integer.parseInt(args[++i]);
+        else if (args[i].startsWith("--"))
+          throw new IllegalArgumentException(args[i]);
+        else
+          sources.addAll(findSources(args[i]));
+      }
+      if (threads < 1)
+        throw new IllegalArgumentException("--threads");
+      if (sequences < 0)
+        throw new IllegalArgumentException("--sequences");
+      if (!(timeout >= 0))
+        throw new IllegalArgumentException("--timeout");
+      if (heapWords < 0)
+        throw new IllegalArgumentException("--heap");
+    } catch (RuntimeException e) {
+      printUsage();
+      System.exit(1);
+    }
+    if (sources.isEmpty()) {
+      System.out.println("No sources found.");
+      printUsage();
+      System.exit(1);
+    }
+
+    long start = System.nanoTime();
+    BatchDriver driver = new BatchDriver(stage, sequences > 0, (long) (timeout * 1000));
+    driver.heapWords = heapWords;
+    driver.growHeap = grow;
+    driver.collectGarbage = gc;
+    List<Result> results = driver.checkAll(sources, threads);
+    long wall = System.nanoTime() - start;
+
+    int expected = 0, unexpected = 0;
+    long compileNanos = 0, runNanos = 0;
+    long generatedSize = 0, size = 0;
+    Map<String, Long> sequenceCounts = new HashMap<String, Long>();
+    for (Result result : results) {
+      result.sequences.forEach((sequence, count) -> sequenceCounts.merge(sequence, count, Long::sum));
+      compileNanos += result.compileNanos;
+      runNanos += result.runNanos;
+      generatedSize += result.generatedSize;
+      size += result.size;
+      String verdict;
+      if (result.expected == Expectation.NONE)
+        verdict = result.passed ? "ok" : "rejected";
+      else if (result.asExpected()) {
+        verdict = "PASS";
+        expected++;
+      } else {
+        verdict = "FAIL";
+        unexpected++;
+      }
+      System.out.printf("%-8s %9.2f ms %9.2f ms  %s%n", verdict, result.compileNanos / 1e6, result.runNanos / 1e6, result.source);
+      if (result.reason != null && (verbose || !result.asExpected()))
+        System.out.println("           " + result.reason);
+      if (verbose && !result.output.isEmpty())
+        System.out.print(result.output.replaceAll("(?m)^", "           | "));
+    }
+
+    System.out.println();
+    System.out.printf("%d sources, %d as expected, %d not, %d without expectation (stage %s, %d threads)%n",
+        results.size(), expected, unexpected, results.size() - expected - unexpected,
+        stage.name().toLowerCase(), threads);
+    System.out.printf("compile %.1f ms, run %.1f ms, wall %.1f ms%n", compileNanos / 1e6, runNanos / 1e6, wall / 1e6);
+    if (generatedSize > 0)
+      System.out.printf("code %d instructions generated, %d after peephole optimization (%.1f%% fewer)%n",
+          generatedSize, size, 100.0 * (generatedSize - size) / generatedSize);
+    if (sequences > 0) {
+      System.out.println();
+      System.out.println("instruction sequences executed most:");
+      sequenceCounts.entrySet().stream()
+          .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+          .limit(sequences)
+          .forEach(sequence -> System.out.printf("%12d  %s%n", sequence.getValue(), sequence.getKey()));
+    }
+    System.exit(unexpected == 0 ? 0 : 4);
+  }
+}
@@ -0,0 +1,520 @@
+package miniJava.CodeGenerator;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.Token;
+import miniJava.SyntacticAnalyzer.TokenKind;
+import miniJava.mJAM.Machine;
+
+/**
+ * folds constant expressions and simplifies the trivial ones in a type checked
+ * AST, before it is translated.  Each visit returns the node to use in place of
+ * the one visited.
+ *
+ * Arithmetic is folded the way mJAM computes it at run time, so an operation
+ * that would overflow or divide by zero is left for the machine to fail on.
+ * An operand is only dropped when it cannot have an effect: x + 0 becomes x,
+ * but x * 0 stays.  if and while statements whose condition folds to a
+ * constant lose the code that can never run.
+ */
+public class ConstantFolding implements Visitor<Object, AST> {
+  private AST ast;
+
+  // expects a *type checked* ast
+  public ConstantFolding(AST checkedAst) {
+    this.ast = checkedAst;
+  }
+
+  public AST fold() {
+    ast.visit(this, null);
+    return ast;
+  }
+
+  /*
+   *
+   * Utilities
+   *
+   */
+
+  private Expression fold(Expression expr) {
+    return (Expression) expr.visit(this, null);
+  }
+
+  private Statement fold(Statement stmt) {
+    return (Statement) stmt.visit(this, null);
+  }
+
+  private void fold(StatementList sl) {
+    for (int i = 0; i < sl.size(); i++) {
+      sl.set(i, fold(sl.get(i)));
+    }
+  }
+
+  private void fold(ExprList el) {
+    for (int i = 0; i < el.size(); i++) {
+      el.set(i, fold(el.get(i)));
+    }
+  }
+
+  // the value of an int literal, or null if expr is anything else
+  private static Integer intValue(Expression expr) {
+    if (!(expr instanceof LiteralExpr) || ((LiteralExpr) expr).lit.kind != TokenKind.NUM) {
+      return null;
+    }
+    try {
+      return Integer.parseInt(((LiteralExpr) expr).lit.spelling);
+    } catch (NumberFormatException e) {
+      return null; // too large, left for code generation to report
+    }
+  }
+
+  // the value of a boolean literal, or null if expr is anything else
+  private static Boolean booleanValue(Expression expr) {
+    if (!(expr instanceof LiteralExpr)) {
+      return null;
+    }
+    switch (((LiteralExpr) expr).lit.kind) {
+      case TRUE:
+        return true;
+      case FALSE:
+        return false;
+      default:
+        return null;
+    }
+  }
+
+  private static boolean isInt(Expression expr, int value) {
+    Integer known = intValue(expr);
+    return known != null && known == value;
+  }
+
+  private static boolean isBoolean(Expression expr, boolean value) {
+    Boolean known = booleanValue(expr);
+    return known != null && known == value;
+  }
+
+  private static Expression intLiteral(int value, SourcePosition posn) {
+    return new LiteralExpr(new IntLiteral(new Token(TokenKind.NUM, Integer.toString(value), posn)), posn);
+  }
+
+  private static Expression booleanLiteral(boolean value, SourcePosition posn) {
+    Token token = new Token(value ? TokenKind.TRUE : TokenKind.FALSE, value ? "true" : "false", posn);
+    return new LiteralExpr(new BooleanLiteral(token), posn);
+  }
+
+  private static Expression not(Expression expr, SourcePosition posn) {
+    return new UnaryExpr(new Operator(new Token(TokenKind.NOT, "!", posn)), expr, posn);
+  }
+
+  // an int result as mJAM's overflowChecked would give it, or null where the machine fails
+  private static Integer checked(long value) {
+    if (value < Machine.minintRep || value > Machine.maxintRep) {
+      return null;
+    }
+    return (int) value;
+  }
+
+  private static Statement emptyStmt(SourcePosition posn) {
+    return new BlockStmt(new StatementList(), posn);
+  }
+
+  /*
+   *
+   * Package and Declarations
+   *
+   */
+
+  @Override
+  public AST visitPackage(Package prog, Object arg) {
+    for (ClassDecl clas : prog.classDeclList) {
+      clas.visit(this, null);
+    }
+    return prog;
+  }
+
+  @Override
+  public AST visitClassDecl(ClassDecl cd, Object arg) {
+    for (FieldDecl field : cd.fieldDeclList) {
+      field.visit(this, null);
+    }
+    for (MethodDecl method : cd.methodDeclList) {
+      method.visit(this, null);
+    }
+    if (cd.constructor != null) {
+      cd.constructor.visit(this, null);
+    }
+    return cd;
+  }
+
+  @Override
+  public AST visitFieldDecl(FieldDecl fd, Object arg) {
+    return fd;
+  }
+
+  @Override
+  public AST visitFieldDeclInit(FieldDeclInit fd, Object arg) {
+    fd.init = fold(fd.init);
+    return fd;
+  }
+
+  @Override
+  public AST visitMethodDecl(MethodDecl md, Object arg) {
+    fold(md.statementList);
+    return md;
+  }
+
+  @Override
+  public AST visitParameterDecl(ParameterDecl pd, Object arg) {
+    return pd;
+  }
+
+  @Override
+  public AST visitVarDecl(VarDecl decl, Object arg) {
+    return decl;
+  }
+
+  @Override
+  public AST visitConstructorDecl(ConstructorDecl constructorDecl, Object arg) {
+    fold(constructorDecl.sl);
+    return constructorDecl;
+  }
+
+  @Override
+  public AST visitArrayLengthDecl(ArrayLengthDecl decl, Object arg) {
+    return decl;
+  }
+
+  /*
+   *
+   * Types
+   *
+   */
+
+  @Override
+  public AST visitBaseType(BaseType type, Object arg) {
+    return type;
+  }
+
+  @Override
+  public AST visitClassType(ClassType type, Object arg) {
+    return type;
+  }
+
+  @Override
+  public AST visitArrayType(ArrayType type, Object arg) {
+    return type;
+  }
+
+  /*
+   *
+   * Statements
+   *
+   */
+
+  @Override
+  public AST visitBlockStmt(BlockStmt stmt, Object arg) {
+    fold(stmt.sl);
+    return stmt;
+  }
+
+  @Override
+  public AST visitVarDeclStmt(VarDeclStmt stmt, Object arg) {
+    stmt.initExp = fold(stmt.initExp);
+    return stmt;
+  }
+
+  @Override
+  public AST visitAssignStmt(AssignStmt stmt, Object arg) {
+    stmt.val = fold(stmt.val);
+    return stmt;
+  }
+
+  @Override
+  public AST visitIxAssignStmt(IxAssignStmt stmt, Object arg) {
+    stmt.ix = fold(stmt.ix);
+    stmt.exp = fold(stmt.exp);
+    return stmt;
+  }
+
+  @Override
+  public AST visitCallStmt(CallStmt stmt, Object arg) {
+    fold(stmt.argList);
+    return stmt;
+  }
+
+  @Override
+  public AST visitReturnStmt(ReturnStmt stmt, Object arg) {
+    if (stmt.returnExpr != null) {
+      stmt.returnExpr = fold(stmt.returnExpr);
+    }
+    return stmt;
+  }
+
+  @Override
+  public AST visitIfStmt(IfStmt stmt, Object arg) {
+    stmt.cond = fold(stmt.cond);
+    stmt.thenStmt = fold(stmt.thenStmt);
+    if (stmt.elseStmt != null) {
+      stmt.elseStmt = fold(stmt.elseStmt);
+    }
+
+    // only one branch can ever run
+    Boolean cond = booleanValue(stmt.cond);
+    if (cond == null) {
+      return stmt;
+    }
+    if (cond) {
+      return stmt.thenStmt;
+    }
+    return stmt.elseStmt != null ? stmt.elseStmt : emptyStmt(stmt.posn);
+  }
+
+  @Override
+  public AST visitWhileStmt(WhileStmt stmt, Object arg) {
+    stmt.cond = fold(stmt.cond);
+    stmt.body = fold(stmt.body);
+    return isBoolean(stmt.cond, false) ? emptyStmt(stmt.posn) : stmt;
+  }
+
+  @Override
+  public AST visitForStmt(ForStmt stmt, Object arg) {
+    if (stmt.hasInit()) {
+      stmt.init = fold(stmt.init);
+    }
+    if (stmt.hasCond()) {
+      stmt.cond = fold(stmt.cond);
+    }
+    if (stmt.hasUpdate()) {
+      stmt.update = fold(stmt.update);
+    }
+    stmt.body = fold(stmt.body);
+    if (!stmt.hasCond() || !isBoolean(stmt.cond, false)) {
+      return stmt;
+    }
+
+    // only the initialization runs, still in a scope of its own
+    Statement init = emptyStmt(stmt.posn);
+    if (stmt.hasInit()) {
+      ((BlockStmt) init).sl.add(stmt.init);
+    }
+    return init;
+  }
+
+  /*
+   *
+   * Expressions
+   *
+   */
+
+  @Override
+  public AST visitUnaryExpr(UnaryExpr expr, Object arg) {
+    expr.expr = fold(expr.expr);
+    switch (expr.operator.kind) {
+      case NOT: {
+        Boolean value = booleanValue(expr.expr);
+        if (value != null) {
+          return booleanLiteral(!value, expr.posn);
+        }
+        if (expr.expr instanceof UnaryExpr && ((UnaryExpr) expr.expr).operator.kind == TokenKind.NOT) {
+          return ((UnaryExpr) expr.expr).expr; // !!x is x
+        }
+        return expr;
+      }
+      case MINUS: {
+        Integer value = intValue(expr.expr);
+        // neg negates in 32 bits before checking, so it never overflows
+        return value == null ? expr : intLiteral(-value, expr.posn);
+      }
+      default:
+        return expr;
+    }
+  }
+
+  @Override
+  public AST visitBinaryExpr(BinaryExpr expr, Object arg) {
+    expr.left = fold(expr.left);
+    expr.right = fold(expr.right);
+    Expression left = expr.left, right = expr.right;
+    SourcePosition posn = expr.posn;
+
+    switch (expr.operator.kind) {
+      // the right operand is only evaluated when the left one does not decide
+      case AND:
+        if (isBoolean(left, true) || isBoolean(right, true)) {
+          return isBoolean(left, true) ? right : left;
+        }
+        return isBoolean(left, false) ? left : expr;
+      case OR:
+        if (isBoolean(left, false) || isBoolean(right, false)) {
+          return isBoolean(left, false) ? right : left;
+        }
+        return isBoolean(left, true) ? left : expr;
+      default:
+        break;
+    }
+
+    Integer l = intValue(left), r = intValue(right);
+    if (l != null && r != null) {
+      Expression folded = foldInts(expr.operator.kind, l, r, posn);
+      return folded == null ? expr : folded;
+    }
+    Boolean lb = booleanValue(left), rb = booleanValue(right);
+    if (lb != null && rb != null) {
+      switch (expr.operator.kind) {
+        case EQUALS:
+          return booleanLiteral(lb == rb, posn);
+        case NEQ:
+          return booleanLiteral(lb != rb, posn);
+        default:
+          return expr;
+      }
+    }
+
+    // identities that keep the other operand, which may have effects
+    switch (expr.operator.kind) {
+      case ADD:
+        if (isInt(right, 0)) {
+          return left;
+        }
+        return isInt(left, 0) ? right : expr;
+      case MINUS:
+        return isInt(right, 0) ? left : expr;
+      case MULTIPLY:
+        if (isInt(right, 1)) {
+          return left;
+        }
+        return isInt(left, 1) ? right : expr;
+      case DIVIDE:
+        return isInt(right, 1) ? left : expr;
+      case EQUALS:
+      case NEQ: {
+        // comparing a boolean with a constant is the boolean or its negation
+        boolean negate = expr.operator.kind == TokenKind.NEQ;
+        if (rb != null) {
+          return rb != negate ? left : not(left, posn);
+        }
+        if (lb != null) {
+          return lb != negate ? right : not(right, posn);
+        }
+        return expr;
+      }
+      default:
+        return expr;
+    }
+  }
+
+  // l op r as mJAM computes it, or null if it fails or op is not on ints
+  private static Expression foldInts(TokenKind op, int l, int r, SourcePosition posn) {
+    Integer value;
+    switch (op) {
+      case ADD:
+        value = checked((long) l + r);
+        break;
+      case MINUS:
+        value = checked((long) l - r);
+        break;
+      case MULTIPLY:
+        value = checked((long) l * r);
+        break;
+      case DIVIDE:
+        value = r == 0 ? null : (int) ((long) l / r);
+        break;
+      case LT:
+        return booleanLiteral(l < r, posn);
+      case GT:
+        return booleanLiteral(l > r, posn);
+      case LEQ:
+        return booleanLiteral(l <= r, posn);
+      case GEQ:
+        return booleanLiteral(l >= r, posn);
+      case EQUALS:
+        return booleanLiteral(l == r, posn);
+      case NEQ:
+        return booleanLiteral(l != r, posn);
+      default:
+        return null;
+    }
+    return value == null ? null : intLiteral(value, posn);
+  }
+
+  @Override
+  public AST visitRefExpr(RefExpr expr, Object arg) {
+    return expr;
+  }
+
+  @Override
+  public AST visitIxExpr(IxExpr expr, Object arg) {
+    expr.ixExpr = fold(expr.ixExpr);
+    return expr;
+  }
+
+  @Override
+  public AST visitCallExpr(CallExpr expr, Object arg) {
+    fold(expr.argList);
+    return expr;
+  }
+
+  @Override
+  public AST visitLiteralExpr(LiteralExpr expr, Object arg) {
+    return expr;
+  }
+
+  @Override
+  public AST visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+    fold(expr.argList);
+    return expr;
+  }
+
+  @Override
+  public AST visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+    expr.sizeExpr = fold(expr.sizeExpr);
+    return expr;
+  }
+
+  /*
+   *
+   * References and Terminals
+   *
+   */
+
+  @Override
+  public AST visitThisRef(ThisRef ref, Object arg) {
+    return ref;
+  }
+
+  @Override
+  public AST visitIdRef(IdRef ref, Object arg) {
+    return ref;
+  }
+
+  @Override
+  public AST visitQualRef(QualRef ref, Object arg) {
+    return ref;
+  }
+
+  @Override
+  public AST visitIdentifier(Identifier id, Object arg) {
+    return id;
+  }
+
+  @Override
+  public AST visitOperator(Operator op, Object arg) {
+    return op;
+  }
+
+  @Override
+  public AST visitIntLiteral(IntLiteral num, Object arg) {
+    return num;
+  }
+
+  @Override
+  public AST visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+    return bool;
+  }
+
+  @Override
+  public AST visitNullLiteral(NullLiteral nulllit, Object arg) {
+    return nulllit;
+  }
+}
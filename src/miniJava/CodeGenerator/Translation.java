@@ -8,10 +8,14 @@ import miniJava.AbstractSyntaxTrees.*;
 import miniJava.AbstractSyntaxTrees.Package;
 import miniJava.SyntacticAnalyzer.SourcePosition;
 import miniJava.SyntacticAnalyzer.TokenKind;
+import miniJava.mJAM.CodeStore;
+import miniJava.mJAM.DebugInfo;
 import miniJava.mJAM.Machine;
 import miniJava.mJAM.Machine.Op;
 import miniJava.mJAM.Machine.Prim;
 import miniJava.mJAM.Machine.Reg;
+import miniJava.mJAM.StackDepth;
+import miniJava.mJAM.TypeMap;
 
 public class Translation implements Visitor<Heap<Integer>, Object> {
   private final static int UNDEFINED = 0; // MethodDecl.offset = 0 initially, but only mainInvoker can be at CB+0 ==> safe to use 0 as undefined method location
@@ -20,7 +24,6 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   private final static int OBJECT_SIZE = 2;
 
   private final static int STATIC_FIELD_INIT = 0; 
-  private final static int LOCAL_VAR_INIT_TAG = 1337; // TESTING: should be 0, but for testing purposes this is easier to see
   public final static int UNINIT_OFFSET = -300; // TESTING: to visualize offset mistakes
   private final static int CLASS_ADDR = -3; 
   private final static int ARRAY_ADDR = -2; // should be identical to tag for array
@@ -28,12 +31,17 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   // types
   private final static Object THIS_REF = new Object();
   private final static Object CLASS_REF = new Object();
-  private final static Object INST_FIELD_REF = new Object();
+  private final static Object INST_FIELD_REF = new Object(); // the object on the stack, the field is the reference's decl
   private final static Object STACK_REF = null;
 
   private AST ast;
   private ErrorReporter reporter;
   private ArrayList<Patch> toPatch;
+  private CodeStore code;
+
+  // locals of the method being generated, in the order declared
+  private ArrayList<ScopedLocal> locals = new ArrayList<ScopedLocal>();
+  private ClassDecl currentClass;
 
   /*
    *
@@ -48,13 +56,24 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   }
 
   public void translate() {
-    Machine.initCodeGen();
+    code = new CodeStore(reporter);
     ast.visit(this, null);
     for (Patch patch : toPatch) {
-      Machine.patch(patch.line, patch.decl.offset);
+      code.patch(patch.line, patch.decl.offset);
+    }
+
+    // how deep each method's stack gets, so the machine can check for space once per call
+    StackDepth depths = new StackDepth(code.toArray());
+    for (TypeMap.Frame frame : code.getTypes().getFrames()) {
+      frame.setMaxDepth(depths.maxDepth(frame.start));
     }
   }
 
+  // the generated program, valid after translate()
+  public CodeStore getCode() {
+    return code;
+  }
+
   /*
    *
    * Utilities
@@ -66,15 +85,81 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   }
 
   
+  /** name of a type as recorded in the type map */
+  private static String typeName(TypeDenoter type) {
+    switch (type.typeKind) {
+      case CLASS:
+        return ((ClassType) type).className.spelling;
+      case ARRAY:
+        return typeName(((ArrayType) type).eltType) + "[]";
+      default:
+        return type.typeKind.name().toLowerCase();
+    }
+  }
+
+  private static boolean isReference(TypeDenoter type) {
+    return type != null && TypeKind.isObject(type.typeKind);
+  }
+
+  /** a local in scope from code address from up to to, which is TBD while it is still in scope */
+  private static class ScopedLocal {
+    final VarDecl decl;
+    final int from;
+    int to = TBD;
+
+    ScopedLocal(VarDecl decl, int from) {
+      this.decl = decl;
+      this.from = from;
+    }
+  }
+
+  /** takes the locals at offsets >= firstOffset out of scope */
+  private void closeLocals(int firstOffset) {
+    for (ScopedLocal local : locals) {
+      if (local.to == TBD && local.decl.offset >= firstOffset) {
+        local.to = code.nextInstrAddr();
+      }
+    }
+  }
+
+  /**
+   * records the method just generated, which started at start, in the debug symbols, and its reference parameters
+   * and locals in the type map
+   */
+  private void addFrame(String name, int start, ParameterDeclList params) {
+    closeLocals(0);
+    int end = code.nextInstrAddr();
+    TypeMap.Frame frame = code.getTypes().addFrame(currentClass.name + "." + name, start, end);
+    DebugInfo.Method method = code.getDebugInfo().addMethod(currentClass.name, name, start, end);
+    for (ParameterDecl param : params) {
+      method.addLocal(param.name, typeName(param.type), param.offset, start, end);
+      if (isReference(param.type)) {
+        frame.addSlot(param.offset, start, end);
+      }
+    }
+    for (ScopedLocal local : locals) {
+      method.addLocal(local.decl.name, typeName(local.decl.type), local.decl.offset, local.from, local.to);
+      if (isReference(local.decl.type)) {
+        frame.addSlot(local.decl.offset, local.from, local.to);
+      }
+    }
+    locals.clear();
+  }
+
+  /** records that the code generated next is from the source line of node */
+  private void addLine(AST node) {
+    code.getDebugInfo().addLine(code.nextInstrAddr(), node.posn == null ? 0 : node.posn.start);
+  }
+
   private void mark(int label) {
-    Machine.emit(Op.LOADL, label);
-    Machine.emit(Op.POP, 1);
+    code.emit(Op.LOADL, label);
+    code.emit(Op.POP, 1);
   }
 
   /** Can make patching slightly quicker as it checks if a method has already been processed. */
   private int addMethodPatch(MethodDecl method) {
     if (method.offset == UNDEFINED) {
-      toPatch.add(new Patch(Machine.nextInstrAddr(), method));
+      toPatch.add(new Patch(code.nextInstrAddr(), method));
       return TBD;
     }
     return method.offset;
@@ -95,14 +180,14 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
 
     // check for built-in methods
     if (Predefined.isPrintLn(method_reference)) { // TypeChecking should block this for assignment
-      Machine.emit(Prim.putintnl);
+      code.emit(Prim.putintnl);
       return null;
     }
 
     // static methods do not need a reference of 'this'
     if (method.isStatic) {
-      toPatch.add(new Patch(Machine.nextInstrAddr(), method));
-      Machine.emit(Op.CALL, Reg.CB, TBD);
+      toPatch.add(new Patch(code.nextInstrAddr(), method));
+      code.emit(Op.CALL, Reg.CB, TBD);
       return null;
     }
 
@@ -115,27 +200,27 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
         return null;
       } else if (refType == THIS_REF) {
         // this ref already on stack -- how nice!
-        toPatch.add(new Patch(Machine.nextInstrAddr(), method));
-        Machine.emit(Op.CALLI, Reg.CB, TBD);
+        toPatch.add(new Patch(code.nextInstrAddr(), method));
+        code.emit(Op.CALLI, Reg.CB, TBD);
         return null;
       } else if (refType == INST_FIELD_REF) {
         // eg. Other.x instanceof Timer; x.counter.tick();
-        Machine.emit(Prim.fieldref);
-        toPatch.add(new Patch(Machine.nextInstrAddr(), method));
-        Machine.emit(Op.CALLI, Reg.CB, TBD);
+        Machine_emitLoadField(((QualRef) method_reference).ref);
+        toPatch.add(new Patch(code.nextInstrAddr(), method));
+        code.emit(Op.CALLI, Reg.CB, TBD);
         return null;
       } else { // STACK_REF
-        Machine.emit(Op.LOADI);
-        toPatch.add(new Patch(Machine.nextInstrAddr(), method));
-        Machine.emit(Op.CALLI, Reg.CB, TBD);
+        code.emit(Op.LOADI);
+        toPatch.add(new Patch(code.nextInstrAddr(), method));
+        code.emit(Op.CALLI, Reg.CB, TBD);
         return null;
       }
     }
     
     // implicit this
     Machine_emitThis();
-    toPatch.add(new Patch(Machine.nextInstrAddr(), method));
-    Machine.emit(Op.CALLI, Reg.CB, TBD);
+    toPatch.add(new Patch(code.nextInstrAddr(), method));
+    code.emit(Op.CALLI, Reg.CB, TBD);
     return null;
   }
 
@@ -155,9 +240,12 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
       int ith_instance = 0;
       for (FieldDecl field : clas.fieldDeclList) {
         if (field.isStatic) {
-          Machine.emit(Op.LOADL, STATIC_FIELD_INIT);
+          code.emit(Op.LOADL, STATIC_FIELD_INIT);
           // ^ NOTE: if Machine.nullRep != 0, then you need to change this base on the field's type! (int vs. bool vs. object, etc.)
           field.offset = ith_statfield++;
+          if (isReference(field.type)) {
+            code.getTypes().addStaticReference(field.offset);
+          }
         } else {
           field.offset = ith_instance++;
         }
@@ -172,11 +260,13 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     }
 
     // main_invoker:
-    Machine.emit(Op.LOADL, 0);
-    Machine.emit(Prim.newarr);
-    func_main_addr = Machine.nextInstrAddr();
-    Machine.emit(Op.CALL, Reg.CB, TBD);
-    Machine.emit(Op.HALT, 0, 0, 0);
+    code.getDebugInfo().addLine(code.nextInstrAddr(), 0);
+    code.emit(Op.LOADL, 0);
+    code.getTypes().addArraySite(code.nextInstrAddr(), 0, "String", true);
+    code.emit(Prim.newarr);
+    func_main_addr = code.nextInstrAddr();
+    code.emit(Op.CALL, Reg.CB, TBD);
+    code.emit(Op.HALT, 0, 0, 0);
     
     // generate code for all methods
     for (ClassDecl clas : prog.classDeclList) {
@@ -188,6 +278,7 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
 
   @Override
   public Object visitClassDecl(ClassDecl cd, Heap<Integer> arg) {
+    currentClass = cd;
     for (MethodDecl method : cd.methodDeclList) {
       method.visit(this, null);
     }
@@ -206,16 +297,17 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
 
   @Override
   public Object visitFieldDeclInit(FieldDeclInit fd, Heap<Integer> arg) {
+    addLine(fd);
     fd.init.visit(this, null);
-    Machine.emit(Op.STORE, Reg.SB, fd.offset);
+    code.emit(Op.STORE, Reg.SB, fd.offset);
     return null;
   }
 
   @Override
   public Object visitMethodDecl(MethodDecl md, Heap<Integer> arg) {
-    md.offset = Machine.nextInstrAddr();
+    md.offset = code.nextInstrAddr();
     if (MethodDecl.isMain(md)) { // guaranteed to be 1
-      Machine.patch(func_main_addr, md.offset);
+      code.patch(func_main_addr, md.offset);
     }
 
     for (int ith_param = 0; ith_param < md.parameterDeclList.size(); ith_param++) {
@@ -231,13 +323,14 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
 
     // if return stmt is dropped in void:, otherwise, it'll jump due to the return right before this
     // we could check for md.returnType.VOID, but it should be okay
-    Machine.emit(Op.RETURN, 0, Reg.ZR, md.parameterDeclList.size());
+    code.emit(Op.RETURN, 0, Reg.ZR, md.parameterDeclList.size());
+    addFrame(md.name, md.offset, md.parameterDeclList);
     return null;
   }
 
   @Override
   public Object visitConstructorDecl(ConstructorDecl cons, Heap<Integer> arg) {
-    cons.offset = Machine.nextInstrAddr();
+    cons.offset = code.nextInstrAddr();
 
     for (int ith_param = 0; ith_param < cons.pl.size(); ith_param++) {
       // set i=0/first param to LB-1, i=1/second param to LB-2, etc...
@@ -251,7 +344,8 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     }
 
     // NOTE: when calling the constructor, please use CALLI and pass the new "this"
-    Machine.emit(Op.RETURN, 0, Reg.ZR, cons.pl.size());
+    code.emit(Op.RETURN, 0, Reg.ZR, cons.pl.size());
+    addFrame(cons.name, cons.offset, cons.pl);
     return null;
   }
 
@@ -286,7 +380,8 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     
     /* you need to pop off the local scope so you don't run out of space during looping */
     // ith_local's value should be changed internally
-    Machine.emit(Op.POP, ith_local.val-num_prev_locals);
+    closeLocals(num_prev_locals);
+    code.emit(Op.POP, ith_local.val-num_prev_locals);
     ith_local.val = num_prev_locals;
     return null;
   }
@@ -294,30 +389,30 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   @Override
   public Object visitVarDeclStmt(VarDeclStmt stmt, Heap<Integer> arg) {
     Heap<Integer> ith_local = arg;
+    addLine(stmt);
     stmt.varDecl.offset = ith_local.val++;
 
-    // Machine.emit(Op.PUSH, 1); // uninitialized
-    Machine.emit(Op.LOADL, LOCAL_VAR_INIT_TAG); // initialized
+    // the new local's slot is the stack top, so the value of initExp is left right where it belongs
+    // (Identification rejects `int x = x`, so initExp never reads the slot)
     stmt.initExp.visit(this, null);
-    Machine.emit(Op.STORE, Reg.LB, stmt.varDecl.offset);
+    locals.add(new ScopedLocal(stmt.varDecl, code.nextInstrAddr()));
     return null;
   }
 
   @Override
   public Object visitAssignStmt(AssignStmt stmt, Heap<Integer> arg) {
     // should not be able to assign to a CLASS_REF or THIS_REF anyways
+    addLine(stmt);
     stmt.val.visit(this, null);
     Object refType = stmt.ref.visit(this, null);
     if (refType == INST_FIELD_REF) { 
       // stmt.val.visit(this, null); <-- do not do (bad because you call it twice!!! --> newobj cannot be called twice)
-      Machine.emit(Op.LOAD, Reg.ST, -3); // we push (a copy of) value back on top 
-      Machine.emit(Prim.fieldupd);
-      Machine.emit(Op.POP, 1); // to remove the first expr val
+      code.emit(Op.STOREF, stmt.ref.getId().decl.offset); // value is under the object, as STOREF wants it
       return null;
     // } else if (refType == THIS_REF) { // storing current this val
       
     } else { // STACK_REF || THIS_REF (works as OB should be treated as a value)
-      Machine.emit(Op.STOREI);
+      code.emit(Op.STOREI);
       return null;
     }
   }
@@ -325,24 +420,26 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   @Override
   public Object visitIxAssignStmt(IxAssignStmt stmt, Heap<Integer> arg) {
     // should not be assigned to a CLASS_REF or THIS_REF anyways
+    addLine(stmt);
     Object refType = stmt.ref.visit(this, null);
     if (refType == INST_FIELD_REF) { // we must first get the address of the array
-      Machine.emit(Prim.fieldref);
+      Machine_emitLoadField(stmt.ref);
     } else {
-      Machine.emit(Op.LOADI);
+      code.emit(Op.LOADI);
     }
     stmt.ix.visit(this, null);
     stmt.exp.visit(this, null);
-    Machine.emit(Prim.arrayupd);
+    code.emit(Op.STOREX);
 
     return null;
   }
 
   @Override
   public Object visitCallStmt(CallStmt stmt, Heap<Integer> arg) {
+    addLine(stmt);
     Machine_emitMethodInvocation(stmt.argList, stmt.methodRef);
     if (stmt.methodRef.getId().decl.type.typeKind != TypeKind.VOID) {
-      Machine.emit(Op.POP, 1); // remove return value if non-void method
+      code.emit(Op.POP, 1); // remove return value if non-void method
     }
     return null;
   }
@@ -351,15 +448,16 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   public Object visitReturnStmt(ReturnStmt stmt, Heap<Integer> arg) {
     // Op.RETURN must also clear the arguments put onto the stack
     int num_args = stmt.ofMethod.parameterDeclList.size();
+    addLine(stmt);
 
     // non-void
     if (stmt.returnExpr != null) {
       stmt.returnExpr.visit(this, null);
-      Machine.emit(Op.RETURN, 1, Reg.ZR, num_args);
+      code.emit(Op.RETURN, 1, Reg.ZR, num_args);
     }
 
     // void
-    Machine.emit(Op.RETURN, 0, Reg.ZR, num_args);
+    code.emit(Op.RETURN, 0, Reg.ZR, num_args);
     return null;
   }
 
@@ -367,22 +465,23 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   public Object visitIfStmt(IfStmt stmt, Heap<Integer> arg) {
     Heap<Integer> ith_local = arg;
 
+    addLine(stmt);
     stmt.cond.visit(this, null);
-    int jumpToElseOrEnd = Machine.nextInstrAddr();
-    Machine.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD); // jump to else: or cont:
+    int jumpToElseOrEnd = code.nextInstrAddr();
+    code.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD); // jump to else: or cont:
 
     stmt.thenStmt.visit(this, ith_local);
     if (stmt.elseStmt == null) {
-      Machine.patch(jumpToElseOrEnd, Machine.nextInstrAddr());
+      code.patch(jumpToElseOrEnd, code.nextInstrAddr());
       return null;
     } 
 
-    int jumpPastElse = Machine.nextInstrAddr();
-    Machine.emit(Op.JUMP, Reg.CB, TBD); // skip over else section if true already activates
-    Machine.patch(jumpToElseOrEnd, Machine.nextInstrAddr());
+    int jumpPastElse = code.nextInstrAddr();
+    code.emit(Op.JUMP, Reg.CB, TBD); // skip over else section if true already activates
+    code.patch(jumpToElseOrEnd, code.nextInstrAddr());
     stmt.elseStmt.visit(this, ith_local); 
 
-    Machine.patch(jumpPastElse, Machine.nextInstrAddr()); 
+    code.patch(jumpPastElse, code.nextInstrAddr()); 
      
     return null;
   }
@@ -391,13 +490,15 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   public Object visitWhileStmt(WhileStmt stmt, Heap<Integer> arg) {
     Heap<Integer> ith_local = arg;
 
-    int condLine = Machine.nextInstrAddr();
+    int condLine = code.nextInstrAddr();
+    addLine(stmt);
     stmt.cond.visit(this, null);
-    int skipBody = Machine.nextInstrAddr();
-    Machine.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD);
+    int skipBody = code.nextInstrAddr();
+    code.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD);
     stmt.body.visit(this, ith_local);
-    Machine.emit(Op.JUMP, Reg.CB, condLine);
-    Machine.patch(skipBody, Machine.nextInstrAddr());
+    addLine(stmt);
+    code.emit(Op.JUMP, Reg.CB, condLine);
+    code.patch(skipBody, code.nextInstrAddr());
     return null;
   }
 
@@ -406,25 +507,31 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     Heap<Integer> ith_local = arg;
     int num_prev_locals = ith_local.val; // standard procedure to start and stop scope
 
+    addLine(stmt);
     if (stmt.hasInit()) {
       stmt.init.visit(this, ith_local);
     }
 
-    int condLine = Machine.nextInstrAddr();
+    int condLine = code.nextInstrAddr();
+    addLine(stmt);
     int skipBodyLine = -1000;
     if (stmt.hasCond()) {
       stmt.cond.visit(this, null);
-      skipBodyLine = Machine.nextInstrAddr();
-      Machine.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD);
+      skipBodyLine = code.nextInstrAddr();
+      code.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD);
     }
     stmt.body.visit(this, ith_local);
+    addLine(stmt);
     if (stmt.hasUpdate()) {
       stmt.update.visit(this, null); // we do not pass ith_local as you can't declare a local here anyways
     }
-    Machine.emit(Op.JUMP, Reg.CB, condLine);
-    Machine.patch(skipBodyLine, Machine.nextInstrAddr());
+    code.emit(Op.JUMP, Reg.CB, condLine);
+    if (stmt.hasCond()) {
+      code.patch(skipBodyLine, code.nextInstrAddr());
+    }
 
-    Machine.emit(Op.POP, ith_local.val-num_prev_locals); // reduce an instruction by removing POP if 0 vars created
+    closeLocals(num_prev_locals);
+    code.emit(Op.POP, ith_local.val-num_prev_locals); // reduce an instruction by removing POP if 0 vars created
     ith_local.val = num_prev_locals;
     return null;
   }
@@ -438,13 +545,13 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
 
   /** loads Reg.OB for the current frame's `this` reference. */
   private Object Machine_emitThis() {
-    Machine.emit(Op.LOADA, Reg.OB, 0);
+    code.emit(Op.LOADA, Reg.OB, 0);
     return THIS_REF;
   }
 
   @Override
   public Object visitThisRef(ThisRef ref, Heap<Integer> arg) {
-    // Machine.emit(Op.LOADA, Reg.OB, 0);
+    // code.emit(Op.LOADA, Reg.OB, 0);
     return Machine_emitThis();
     // return null;
   }
@@ -453,34 +560,37 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   public Object visitIdRef(IdRef ref, Heap<Integer> arg) {
     if (ref.id.decl instanceof ClassDecl) {
       // eg. Other.staticfield
-      // Machine.emit(Op.LOAD, Reg.SB, ref.id.decl.offset);
+      // code.emit(Op.LOAD, Reg.SB, ref.id.decl.offset);
       // NOTE: the referencing should be done from the QualRef
       return CLASS_REF;
     } else if (ref.id.decl instanceof LocalDecl) {
       // eg. localx
-      Machine.emit(Op.LOADA, Reg.LB, ref.id.decl.offset);
+      code.emit(Op.LOADA, Reg.LB, ref.id.decl.offset);
       return null;
     } else if (ref.id.decl instanceof FieldDecl) { /* Internal Field Ref */
       // eg. (implicit this.) field (essentially a QualRef)
       if (((FieldDecl) ref.id.decl).isStatic) {
         // eg. (implicit this.) staticfield
         // we don't need object reference for static fields
-        Machine.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
+        code.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
       } else {
-        // eg. (implicit this.) instfield
-        Machine_emitThis();
-        Machine.emit(Op.LOADL, ref.id.decl.offset);
-        return INST_FIELD_REF; // (we went into internal field to get an external field)
+        // eg. (implicit this.) instfield, addressed from OB like a local from LB
+        code.emit(Op.LOADA, Reg.OB, ref.id.decl.offset);
       }
     }
 
     return null;
   }
 
+  /** loads the value of the instance field ref names, from the object on the stack */
+  private void Machine_emitLoadField(Reference ref) {
+    code.emit(Op.LOADF, ref.getId().decl.offset);
+  }
+
   private boolean Machine_emitStaticField(FieldDecl field) {
     if (field.isStatic) {
-      Machine.emit(Op.POP, 1);
-      Machine.emit(Op.LOADA, Reg.SB, field.offset);
+      code.emit(Op.POP, 1);
+      code.emit(Op.LOADA, Reg.SB, field.offset);
       return true;
     }
     return false;
@@ -493,35 +603,34 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
       return ref.ref.visit(this, null);
     }
 
+    if (ref.ref instanceof ThisRef && !((FieldDecl) ref.getId().decl).isStatic) {
+      // eg. this.instfield, the same as the implicit this
+      code.emit(Op.LOADA, Reg.OB, ref.id.decl.offset);
+      return null;
+    }
+
     Object leftRefKind = ref.ref.visit(this, null);
-    if (leftRefKind == THIS_REF) {
-      if (((FieldDecl) ref.getId().decl).isStatic) { /* Internal Field Ref */
-        Machine.emit(Op.POP, 1); // we don't need the object reference for static fields
-        Machine.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
-      } else {
-        Machine.emit(Op.LOADL, ref.id.decl.offset);
-        return INST_FIELD_REF;
-      }
-    } else if (leftRefKind == INST_FIELD_REF) { // eg. (this.)field.inst <--
-      Machine.emit(Prim.fieldref); // this gets value, but what if this is a primative? --> well it's ready to be gotten!
+    if (leftRefKind == THIS_REF) { /* Internal Static Field Ref */
+      code.emit(Op.POP, 1); // we don't need the object reference for static fields
+      code.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
+    } else if (leftRefKind == INST_FIELD_REF) { // eg. other.field.inst <--
+      Machine_emitLoadField(ref.ref); // this gets value, but what if this is a primative? --> well it's ready to be gotten!
       if (((FieldDecl) ref.getId().decl).isStatic) {
-        Machine.emit(Op.POP, 1);
-        Machine.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
+        code.emit(Op.POP, 1);
+        code.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
         return null;
       } else {
-        Machine.emit(Op.LOADL, ref.id.decl.offset);
         return INST_FIELD_REF;
       }
     } else if (leftRefKind == CLASS_REF) {
       // eg. Other.staticfield (typechecking should only allow static)
-      Machine.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
+      code.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
     } else { // local or static address (stack) is on stack
       if (((FieldDecl) ref.getId().decl).isStatic) {
-        Machine.emit(Op.POP, 1); // we don't need the prior reference as we can get the static field straight from this ref
-        Machine.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
+        code.emit(Op.POP, 1); // we don't need the prior reference as we can get the static field straight from this ref
+        code.emit(Op.LOADA, Reg.SB, ref.id.decl.offset);
       } else {
-        Machine.emit(Op.LOADI);
-        Machine.emit(Op.LOADL, ref.id.decl.offset);
+        code.emit(Op.LOADI);
         return INST_FIELD_REF;
       }
     }
@@ -540,10 +649,10 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     expr.expr.visit(this, null);
     switch (expr.operator.kind) {
       case NOT:
-        Machine.emit(Prim.not);
+        code.emit(Op.NOT);
         break;
       case MINUS:
-        Machine.emit(Prim.neg);
+        code.emit(Op.NEG);
         break;
       default:
         reporter.reportError(prefix(expr.operator.posn) + "unknown binary operator '" + expr.operator.spelling + "'.");
@@ -557,29 +666,20 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     expr.left.visit(this, null);
     TokenKind opKind = expr.operator.kind;
 
-    // short circuiting operators
+    // short circuiting operators: the right operand is the result unless the
+    // left one already decides it
     if (opKind == TokenKind.AND || opKind == TokenKind.OR) {
-      int shortCircuitJumpLine = Machine.nextInstrAddr();
-      switch (opKind) {
-        case AND:
-          Machine.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, TBD);
-          Machine.emit(Op.LOADL, Machine.trueRep);
-          expr.right.visit(this, null);
-          Machine.emit(Prim.and);
-          break;
-        case OR:
-          Machine.emit(Op.JUMPIF, Machine.trueRep, Reg.CB, TBD);
-          Machine.emit(Op.LOADL, Machine.falseRep);
-          expr.right.visit(this, null);
-          Machine.emit(Prim.or);
-          break;
-        default:
-          reporter.reportError(prefix(expr.operator.posn) + "not a short circuiting operator.");
-      }
-      
+      int decided = opKind == TokenKind.AND ? Machine.falseRep : Machine.trueRep;
+      int shortCircuitJumpLine = code.nextInstrAddr();
+      code.emit(Op.JUMPIF, decided, Reg.CB, TBD);
+      expr.right.visit(this, null);
+      int skipShortCircuitLine = code.nextInstrAddr();
+      code.emit(Op.JUMP, Reg.CB, TBD);
+
       // set where short circuit skip should be:
-      Machine.patch(shortCircuitJumpLine, Machine.nextInstrAddr());
-      Machine.emit(Op.LOADL, opKind == TokenKind.AND ? Machine.falseRep : Machine.trueRep);
+      code.patch(shortCircuitJumpLine, code.nextInstrAddr());
+      code.emit(Op.LOADL, decided);
+      code.patch(skipShortCircuitLine, code.nextInstrAddr());
 
       return null;
     }
@@ -587,34 +687,34 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     expr.right.visit(this, null);
     switch (expr.operator.kind) {
       case ADD:
-        Machine.emit(Prim.add);
+        code.emit(Op.ADD);
         break;
       case MINUS:
-        Machine.emit(Prim.sub);
+        code.emit(Op.SUB);
         break;
       case MULTIPLY:
-        Machine.emit(Prim.mult);
+        code.emit(Op.MULT);
         break;
       case DIVIDE:
-        Machine.emit(Prim.div);
+        code.emit(Op.DIV);
         break;
       case LT:
-        Machine.emit(Prim.lt);
+        code.emit(Op.LT);
         break;
       case GT:
-        Machine.emit(Prim.gt);
+        code.emit(Op.GT);
         break;
       case LEQ:
-        Machine.emit(Prim.le);
+        code.emit(Op.LE);
         break;
       case GEQ:
-        Machine.emit(Prim.ge);
+        code.emit(Op.GE);
         break;
       case EQUALS:
-        Machine.emit(Prim.eq);
+        code.emit(Op.EQ);
         break;
       case NEQ:
-        Machine.emit(Prim.ne);
+        code.emit(Op.NE);
         break;
       default:
         reporter.reportError(prefix(expr.operator.posn) + "unknown binary operator '" + expr.operator.spelling + "'.");
@@ -633,23 +733,23 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
     if (expr.ref.getId().decl instanceof ArrayLengthDecl) {
       /* decided to implement QualRef just getting the array's length */
       if (refType == INST_FIELD_REF) {
-        Machine.emit(Prim.fieldref);
+        Machine_emitLoadField(((QualRef) expr.ref).ref);
       } else { // STACK_REF
-        Machine.emit(Op.LOADI);
+        code.emit(Op.LOADI);
       }
-      Machine.emit(Prim.arraylen);
+      code.emit(Prim.arraylen);
       return null;
       // cannot ever get `this.length` (as if `this` was an array)
     }
 
     if (refType == INST_FIELD_REF) {
-      Machine.emit(Prim.fieldref);
+      Machine_emitLoadField(expr.ref);
       return null;
     } else if (refType == THIS_REF) {
       // we just want OB as a value
       return null;
     } else { // STACK_REF
-      Machine.emit(Op.LOADI);
+      code.emit(Op.LOADI);
     }
 
     return null;
@@ -659,12 +759,12 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   public Object visitIxExpr(IxExpr expr, Heap<Integer> arg) {
     Object refType = expr.ref.visit(this, null);
     if (refType == INST_FIELD_REF) {
-      Machine.emit(Prim.fieldref);
+      Machine_emitLoadField(expr.ref);
     } else {
-      Machine.emit(Op.LOADI);
+      code.emit(Op.LOADI);
     }
     expr.ixExpr.visit(this, null);
-    Machine.emit(Prim.arrayref);
+    code.emit(Op.LOADX);
     return null;
   }
 
@@ -695,7 +795,7 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
         reporter.reportError(prefix(expr.posn) + "unsupported literal token of '" + expr.lit.toString() + "'");
         break;
     }
-    Machine.emit(Op.LOADL, val);
+    code.emit(Op.LOADL, val);
     return null;
   }
 
@@ -703,15 +803,16 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   public Object visitNewObjectExpr(NewObjectExpr expr, Heap<Integer> arg) {
     ClassDecl calling = (ClassDecl) expr.classtype.className.decl;
 
-    Machine.emit(Op.LOADL, CLASS_ADDR); // we do not save the Class object in memory, for our miniJava, classes are entirely a compilation entity
-    Machine.emit(Op.LOADL, ((ClassDecl) expr.classtype.className.decl).instanceSize); // instanceSize must be set first!
-    Machine.emit(Prim.newobj);
+    code.emit(Op.LOADL, CLASS_ADDR); // we do not save the Class object in memory, for our miniJava, classes are entirely a compilation entity
+    code.emit(Op.LOADL, ((ClassDecl) expr.classtype.className.decl).instanceSize); // instanceSize must be set first!
+    code.getTypes().addObjectSite(code.nextInstrAddr(), expr.posn.start, calling.name, referenceFields(calling));
+    code.emit(Prim.newobj);
 
     if (!calling.hasDefaultConstructor()) {
       Machine_emitPushArgList(expr.argList);
-      Machine.emit(Op.LOAD, Reg.ST, -(1 + expr.argList.size())); // make a copy of object reference
-      toPatch.add(new Patch(Machine.nextInstrAddr(), calling.constructor));
-      Machine.emit(Op.CALLI, Reg.CB, calling.constructor.offset);
+      code.emit(Op.LOAD, Reg.ST, -(1 + expr.argList.size())); // make a copy of object reference
+      toPatch.add(new Patch(code.nextInstrAddr(), calling.constructor));
+      code.emit(Op.CALLI, Reg.CB, calling.constructor.offset);
     }
     return null;
   }
@@ -719,10 +820,23 @@ public class Translation implements Visitor<Heap<Integer>, Object> {
   @Override
   public Object visitNewArrayExpr(NewArrayExpr expr, Heap<Integer> arg) {
     expr.sizeExpr.visit(this, null);
-    Machine.emit(Prim.newarr);
+    code.getTypes().addArraySite(code.nextInstrAddr(), expr.posn.start, typeName(expr.eltType), isReference(expr.eltType));
+    code.emit(Prim.newarr);
     return null;
   }
 
+  /** indices of the instance fields of a class that hold references */
+  private static int[] referenceFields(ClassDecl cd) {
+    int count = 0;
+    int[] fields = new int[cd.fieldDeclList.size()];
+    for (FieldDecl field : cd.fieldDeclList) {
+      if (!field.isStatic && isReference(field.type)) {
+        fields[count++] = field.offset;
+      }
+    }
+    return java.util.Arrays.copyOf(fields, count);
+  }
+
   
   /*
   * 
@@ -0,0 +1,87 @@
+package miniJava;
+
+import java.util.List;
+
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.mJAM.CodeStore;
+import miniJava.mJAM.Machine;
+import miniJava.mJAM.ObjectFile;
+import miniJava.mJAM.VirtualMachine;
+
+/**
+ * result of compiling one miniJava source with a CompilerSession.  Holds
+ * everything the compilation produced, so nothing is left behind in shared state.
+ */
+public class CompiledProgram {
+  private final Package ast;
+  private final CodeStore code;
+  private final int generatedSize;
+  private final String failedPhase;
+  private final List<String> errors;
+  // never run; the machines newMachine returns share its code image
+  private VirtualMachine image;
+
+  CompiledProgram(Package ast, CodeStore code, int generatedSize, String failedPhase, List<String> errors) {
+    this.ast = ast;
+    this.code = code;
+    this.generatedSize = generatedSize;
+    this.failedPhase = failedPhase;
+    this.errors = errors;
+  }
+
+  public boolean succeeded() {
+    return failedPhase == null;
+  }
+
+  // "parsing", "identification", "type checking" or "code generation", null on success
+  public String getFailedPhase() {
+    return failedPhase;
+  }
+
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  // decorated AST, or null if parsing failed
+  public Package getAst() {
+    return ast;
+  }
+
+  // generated code, or null unless compilation succeeded
+  public CodeStore getCode() {
+    return code;
+  }
+
+  // number of instructions generated, before the peephole optimizer removed some
+  public int getGeneratedSize() {
+    return generatedSize;
+  }
+
+  // number of instructions in the generated code, 0 unless compilation succeeded
+  public int getSize() {
+    return code == null ? 0 : code.nextInstrAddr() - Machine.CB;
+  }
+
+  /**
+   * @return a fresh machine loaded with the program, so a program can be run
+   *         several times or on several threads at once; all of them share
+   *         one copy of the code, decoded once
+   */
+  public synchronized VirtualMachine newMachine() {
+    if (code == null)
+      throw new IllegalStateException("program failed " + failedPhase);
+    if (image == null)
+      image = new VirtualMachine(code.toArray(), code.getTypes(), code.getDebugInfo());
+    return new VirtualMachine(image);
+  }
+
+  /**
+   * Write the generated code into a binary object file
+   * @return true if write fails
+   */
+  public boolean write(String objectFileName) {
+    if (code == null)
+      return true;
+    return new ObjectFile(objectFileName).write(code);
+  }
+}
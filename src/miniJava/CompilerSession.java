@@ -0,0 +1,117 @@
+package miniJava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.CodeGenerator.ConstantFolding;
+import miniJava.CodeGenerator.Translation;
+import miniJava.ContextualAnalyzer.Identification;
+import miniJava.ContextualAnalyzer.TypeChecking;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.mJAM.CodeStore;
+import miniJava.mJAM.Machine;
+import miniJava.mJAM.Peephole;
+
+/**
+ * compiles miniJava sources in-process.  Every call to compile runs the whole
+ * pipeline on objects of its own and never exits the JVM, so one session can be
+ * shared by many threads compiling at the same time.
+ */
+public class CompilerSession {
+  private final PrintStream errorStream;
+  private final boolean requireMain;
+
+  // errors are only collected in the CompiledProgram
+  public CompilerSession() {
+    this(null);
+  }
+
+  // errors are also echoed to errorStream as they are found, like the command line compiler does
+  public CompilerSession(PrintStream errorStream) {
+    this(errorStream, true);
+  }
+
+  // requireMain false accepts packages without exactly one main method, as PA3
+  // sources are, though code generation then fails for lack of one
+  public CompilerSession(PrintStream errorStream, boolean requireMain) {
+    this.errorStream = errorStream;
+    this.requireMain = requireMain;
+  }
+
+  /**
+   * compile the source file fileName, which is read in one go
+   * @throws IOException if the file cannot be read
+   */
+  public CompiledProgram compile(String fileName) throws IOException {
+    return compile(Files.readAllBytes(Paths.get(fileName)));
+  }
+
+  /**
+   * compile a source held in memory
+   */
+  public CompiledProgram compile(byte[] source) {
+    ErrorReporter reporter = new ErrorReporter(errorStream);
+    return compile(new Scanner(source, reporter), reporter);
+  }
+
+  /**
+   * compile a source read from the given stream, which is left open
+   */
+  public CompiledProgram compile(InputStream source) {
+    ErrorReporter reporter = new ErrorReporter(errorStream);
+    return compile(new Scanner(source, reporter), reporter);
+  }
+
+  private CompiledProgram compile(Scanner scanner, ErrorReporter reporter) {
+    // Parsing and Scanning
+    Package ast = new Parser(scanner, reporter).parse();
+    if (ast == null || reporter.hasErrors())
+      return failed(ast, "parsing", reporter);
+
+    // Contextual Analysis
+    try {
+      new Identification(ast, reporter, requireMain).identify();
+    } catch (RuntimeException e) {
+      reporter.reportError("Identification aborted: " + e);
+    }
+    if (reporter.hasErrors())
+      return failed(ast, "identification", reporter);
+
+    try {
+      new TypeChecking(ast, reporter).typeCheck();
+    } catch (RuntimeException e) {
+      reporter.reportError("Type checking aborted: " + e);
+    }
+    if (reporter.hasErrors())
+      return failed(ast, "type checking", reporter);
+
+    // Optimization of the checked AST
+    new ConstantFolding(ast).fold();
+
+    // Code Generation
+    Translation translator = new Translation(ast, reporter);
+    try {
+      translator.translate();
+    } catch (RuntimeException e) {
+      reporter.reportError("Code generation aborted: " + e);
+    }
+    if (reporter.hasErrors())
+      return failed(ast, "code generation", reporter);
+
+    // Optimization of the generated code
+    CodeStore code = translator.getCode();
+    int generated = code.nextInstrAddr() - Machine.CB;
+    Peephole.optimize(code);
+
+    return new CompiledProgram(ast, code, generated, null, reporter.getErrors());
+  }
+
+  private static CompiledProgram failed(Package ast, String phase, ErrorReporter reporter) {
+    return new CompiledProgram(ast, null, 0, phase, reporter.getErrors());
+  }
+}
@@ -16,11 +16,18 @@ public class Identification implements Visitor<WatchOut, Object> { // just <ArgT
   protected IdTable env;
   private Context context;
   private boolean hasMain;
+  private final boolean requireMain; // whether a package without exactly one main method is an error
   private ArrayList<FieldDeclInit> delayedFieldInit;
 
   private static final WatchOut none = WatchOut.None;
 
   public Identification(AST ast, ErrorReporter reporter) {
+    this(ast, reporter, true);
+  }
+
+  // requireMain false leaves out the main method rule, which only code generation needs
+  public Identification(AST ast, ErrorReporter reporter, boolean requireMain) {
+    this.requireMain = requireMain;
     this.ast = ast;
     this.reporter = reporter;
     this.env = new IdTable();
@@ -80,9 +87,10 @@ public class Identification implements Visitor<WatchOut, Object> { // just <ArgT
     env.addScope(); // add CLASS scope
 
     // premade classes
-    env.addClassDecl("String", Predefined.string);
-    env.addClassDecl("_PrintStream", Predefined._printstream);
-    env.addClassDecl("System", Predefined.system);
+    Predefined predefined = new Predefined();
+    env.addClassDecl("String", predefined.string);
+    env.addClassDecl("_PrintStream", predefined._printstream);
+    env.addClassDecl("System", predefined.system);
 
     // we must pre-add all classes first so ClassIds can be filled
     for (ClassDecl clas : prog.classDeclList) {
@@ -96,7 +104,7 @@ public class Identification implements Visitor<WatchOut, Object> { // just <ArgT
 
     env.removeScope(); // ends CLASS scope
 
-    if (!hasMain) {
+    if (requireMain && !hasMain) {
       reporter.reportError(prefix(prog.posn) + " each package needs a single main method in miniJava.");
     }
     return null;
@@ -122,7 +130,7 @@ public class Identification implements Visitor<WatchOut, Object> { // just <ArgT
     for (MethodDecl method : cd.methodDeclList) {
       method.visit(this, none);
       if (MethodDecl.isMain(method)) {
-        if (hasMain) { // already has a `main` method
+        if (requireMain && hasMain) { // already has a `main` method
           reporter.reportError(prefix(method.posn) + "main method has already been defined. miniJava only accepts one main method per package.");
         }
         hasMain = true;
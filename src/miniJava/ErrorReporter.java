@@ -1,17 +1,30 @@
 package miniJava;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * reports errors from different phases of compilation
- * and maintains a count of total errors for use in 
+ * and maintains a count of total errors for use in
  * the compiler driver
  *
  */
 public class ErrorReporter {
 
 		private int numErrors;
+		private PrintStream out;       // where errors are echoed, or null to stay quiet
+		private List<String> messages;
 
 		public ErrorReporter() {
+			this(System.out);
+		}
+
+		public ErrorReporter(PrintStream out) {
 			numErrors = 0;
+			this.out = out;
+			this.messages = new ArrayList<String>();
 		}
 
 		public boolean hasErrors() {
@@ -19,7 +32,16 @@ public class ErrorReporter {
 		}
 
 		public void reportError(String message) {
-			System.out.println(message);
+			if (out != null)
+				out.println(message);
+			messages.add(message);
 			numErrors++;
-		}	
+		}
+
+		/**
+		 * @return the messages reported so far, in order
+		 */
+		public List<String> getErrors() {
+			return Collections.unmodifiableList(messages);
+		}
 }
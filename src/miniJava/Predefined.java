@@ -3,12 +3,16 @@ package miniJava;
 import miniJava.AbstractSyntaxTrees.*;
 import miniJava.SyntacticAnalyzer.*;
 
+/**
+ * classes every miniJava program can use without declaring them.  Identification
+ * decorates these like any other declaration, so each compilation builds its own.
+ */
 public class Predefined {
   public final static int PREDEFINED_LINE_NO = -1;
-  public static ClassDecl string;
-  public static ClassDecl _printstream;
-  public static ClassDecl system;
-  static { 
+  public final ClassDecl string;
+  public final ClassDecl _printstream;
+  public final ClassDecl system;
+  public Predefined() { 
     // each wrapped in blocks so we can collapse them in IDE
     {string = new ClassDecl("String", new FieldDeclList(), new MethodDeclList(), new SourcePosition(PREDEFINED_LINE_NO));}
 
@@ -69,6 +73,9 @@ public class Predefined {
       System.out.println(b);
       return b;
     }
+    public static boolean isPredefined(Declaration decl) {
+      return decl != null && decl.posn.start == PREDEFINED_LINE_NO;
+    }
     public static boolean isPrintLn(Reference printlnRef) {
       MethodDecl method = (MethodDecl) printlnRef.getId().decl;
 
@@ -81,10 +88,12 @@ public class Predefined {
         && method.parameterDeclList.get(0).type.typeKind == TypeKind.INT
         && printlnRef.isQualified()
         && ((QualRef) printlnRef).ref.getId().spelling.equals("out")
-        && ((QualRef) printlnRef).ref.getId().decl == system.fieldDeclList.get(0)
+        && ((QualRef) printlnRef).ref.getId().decl instanceof FieldDecl
+        && isPredefined(((QualRef) printlnRef).ref.getId().decl)
         && ((QualRef) printlnRef).ref.isQualified()
         && ((QualRef) (((QualRef) printlnRef).ref)).ref.getId().spelling.equals("System")
-        && ((QualRef) (((QualRef) printlnRef).ref)).ref.getId().decl == system
+        && ((QualRef) (((QualRef) printlnRef).ref)).ref.getId().decl instanceof ClassDecl
+        && isPredefined(((QualRef) (((QualRef) printlnRef).ref)).ref.getId().decl)
       );
     }
   
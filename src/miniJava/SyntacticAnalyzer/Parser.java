@@ -11,7 +11,7 @@ public class Parser {
 
   private Scanner scanner;
   private ErrorReporter reporter;
-  private Token token; // current token to parse
+  private TokenKind kind; // kind of the current token to parse, the rest of it is in scanner
   private int startpos; // current token.posn (automatically updated by accepting functions)
   private int finishpos; // last token parsed
   private boolean trace = true;
@@ -38,7 +38,7 @@ public class Parser {
    *  parse input, catch possible parse error
    */
   public Package parse() {
-    token = scanner.scan();
+    kind = scanner.next();
     int pkg_start = startpos;
     try {
       // should be okay since parseProgram will run first, then finishpos will already be updated --> apparently this is not guaranteed in C
@@ -58,7 +58,7 @@ public class Parser {
   // parse Program ::= (ClassDeclaration)* (eot)
   private ClassDeclList parseProgram() throws SyntaxError {
     ClassDeclList classes = new ClassDeclList();
-    while (token.kind != TokenKind.EOT) {
+    while (kind != TokenKind.EOT) {
       classes.add(parseClassDeclaration());
     }
     accept(TokenKind.EOT);
@@ -68,14 +68,14 @@ public class Parser {
   private ClassDecl parseClassDeclaration() throws SyntaxError {
     int class_start = startpos;
     accept(TokenKind.CLASS);
-    String classname = accept(TokenKind.ID).spelling;
+    String classname = acceptSpelling(TokenKind.ID);
     accept(TokenKind.LCURLY);
 
     FieldDeclList fields = new FieldDeclList();
     MethodDeclList methods = new MethodDeclList();
     ConstructorDecl constructor = null; // NOTE: we only support one constructor per class right now
     // while ("starter set of ClassItem") {
-    while (token.kind != TokenKind.RCURLY) {
+    while (kind != TokenKind.RCURLY) {
       MemberSpecifier classItem = parseClassItem();
 
       switch (classItem.kind) {
@@ -116,17 +116,17 @@ public class Parser {
     // void MethodDecl
     if (acceptCheck(TokenKind.VOID)) {
       int void_pos = finishpos;
-      String methodname = accept(TokenKind.ID).spelling;
+      String methodname = acceptSpelling(TokenKind.ID);
       accept(TokenKind.LPAREN);
 
       ParameterDeclList params = new ParameterDeclList(); // empty by default
-      if (token.kind != TokenKind.RPAREN) { // easier than: if (StarterSets.TypeStarters.contains(token.kind)) { // starters(Type) = starters(ParameterList)
+      if (kind != TokenKind.RPAREN) { // easier than: if (StarterSets.TypeStarters.contains(kind)) { // starters(Type) = starters(ParameterList)
         params = parseParamList();
       }
       accept(TokenKind.RPAREN);
       accept(TokenKind.LCURLY);
       StatementList statements = new StatementList();
-      while (token.kind != TokenKind.RCURLY) {
+      while (kind != TokenKind.RCURLY) {
         statements.add(parseStatement());
       }
       accept(TokenKind.RCURLY);
@@ -134,7 +134,7 @@ public class Parser {
     }
 
     // Token firstId = accept(TokenKind.ID); // either a type or Constructor's class reference
-    Token typeOrConsName = acceptIt();
+    Token typeOrConsName = takeIt();
 
     // ConstructorDecl
     if (acceptCheck(TokenKind.LPAREN)) {
@@ -142,13 +142,13 @@ public class Parser {
         parseError(typeOrConsName, "expecting an identifier for a constructor.");
       }
       ParameterDeclList params = new ParameterDeclList();
-      if (token.kind != TokenKind.RPAREN) {
+      if (kind != TokenKind.RPAREN) {
         params = parseParamList();
       }
       accept(TokenKind.RPAREN);
       accept(TokenKind.LCURLY);
       StatementList statements = new StatementList();
-      while (token.kind != TokenKind.RCURLY) {
+      while (kind != TokenKind.RCURLY) {
         statements.add(parseStatement());
       }
       accept(TokenKind.RCURLY);
@@ -156,16 +156,16 @@ public class Parser {
     }
 
     TypeDenoter type = parseType(typeOrConsName);
-    String name = accept(TokenKind.ID).spelling;
+    String name = acceptSpelling(TokenKind.ID);
 
     // (typed) FieldDecl
-    if (token.kind == TokenKind.SEMICOLON) {
+    if (kind == TokenKind.SEMICOLON) {
       acceptIt();
       return new MemberSpecifier(new FieldDecl(isPrivate, isStatic, type, name, new SourcePosition(classitem_start, finishpos)), MemberKind.FIELD);
     }
 
     // (typed) FieldDeclInit (w/ initialization)
-    if (token.kind == TokenKind.ASSIGN) {
+    if (kind == TokenKind.ASSIGN) {
       acceptIt();
       Expression init = parseExpression();
       accept(TokenKind.SEMICOLON);
@@ -175,13 +175,13 @@ public class Parser {
     // typed MethodDecl
     accept(TokenKind.LPAREN);
     ParameterDeclList params = new ParameterDeclList();
-    if (token.kind != TokenKind.RPAREN) { // easier than: if (StarterSets.TypeStarters.contains(token.kind)) { // starters(Type) = starters(ParameterList)
+    if (kind != TokenKind.RPAREN) { // easier than: if (StarterSets.TypeStarters.contains(kind)) { // starters(Type) = starters(ParameterList)
       params = parseParamList();
     }
     accept(TokenKind.RPAREN);
     accept(TokenKind.LCURLY);
     StatementList statements = new StatementList();
-    while (token.kind != TokenKind.RCURLY) {
+    while (kind != TokenKind.RCURLY) {
       statements.add(parseStatement());
     }
     accept(TokenKind.RCURLY);
@@ -193,10 +193,10 @@ public class Parser {
    * @throws SyntaxError
    */
   private boolean parseVisibility() throws SyntaxError {
-    if (token.kind == TokenKind.PUBLIC) {
+    if (kind == TokenKind.PUBLIC) {
       acceptIt();
       return false;
-    } else if (token.kind == TokenKind.PRIVATE) {
+    } else if (kind == TokenKind.PRIVATE) {
       acceptIt();
       return true;
     }
@@ -210,7 +210,7 @@ public class Parser {
    * @throws SyntaxError
    */
   private boolean parseAccess() throws SyntaxError {
-    if (token.kind == TokenKind.STATIC) {
+    if (kind == TokenKind.STATIC) {
       acceptIt();
       return true;
     } 
@@ -227,7 +227,7 @@ public class Parser {
       case INT:
       case ID:
         boolean isInt = prev.kind == TokenKind.INT;
-        if (token.kind == TokenKind.LSQUARE) {
+        if (kind == TokenKind.LSQUARE) {
           accept(TokenKind.LSQUARE);
           accept(TokenKind.RSQUARE);
           return new ArrayType(isInt ? new BaseType(TypeKind.INT, type_pos) : new ClassType(new Identifier(prev), type_pos), type_pos);
@@ -240,7 +240,7 @@ public class Parser {
   }
 
   private TypeDenoter parseType() throws SyntaxError {
-    return parseType(acceptIt());
+    return parseType(takeIt());
   }
 
   private ParameterDeclList parseParamList() throws SyntaxError {
@@ -249,7 +249,7 @@ public class Parser {
     do {
       int param_start = startpos;
       TypeDenoter type = parseType();
-      String name = accept(TokenKind.ID).spelling;
+      String name = acceptSpelling(TokenKind.ID);
       params.add(new ParameterDecl(type, name, new SourcePosition(param_start, finishpos)));
     } while (acceptCheck(TokenKind.COMMA));
 
@@ -270,21 +270,21 @@ public class Parser {
     SourcePosition ref_pos = new SourcePosition(startpos);
     Reference left;
     // if (! (acceptCheck(TokenKind.THIS) || acceptCheck(TokenKind.ID))) { error! }
-    if (token.kind == TokenKind.THIS && innerRef == null) {
+    if (kind == TokenKind.THIS && innerRef == null) {
       acceptIt();
       left = new ThisRef(ref_pos);
-    } else if (token.kind == TokenKind.THIS && innerRef != null) {
-      parseError(token, "Invalid Reference: `this` cannot be an attribute of another Reference. (inside parseReference)");    
+    } else if (kind == TokenKind.THIS && innerRef != null) {
+      parseError(current(), "Invalid Reference: `this` cannot be an attribute of another Reference. (inside parseReference)");    
       return null;
-    } else if (innerRef != null && token.kind != TokenKind.THIS) {
-      left = new QualRef(innerRef, new Identifier(accept(TokenKind.ID)), ref_pos);
-    } else { // innnerRef == null && token.kind != THIS
-      left = new IdRef(new Identifier(accept(TokenKind.ID)), ref_pos);
+    } else if (innerRef != null && kind != TokenKind.THIS) {
+      left = new QualRef(innerRef, new Identifier(take(TokenKind.ID)), ref_pos);
+    } else { // innnerRef == null && kind != THIS
+      left = new IdRef(new Identifier(take(TokenKind.ID)), ref_pos);
     }
 
     Reference right;
     while (acceptCheck(TokenKind.PERIOD)) {
-      right = new QualRef(left, new Identifier(accept(TokenKind.ID)), new SourcePosition(finishpos)); // righter/specific-er ref is higher on AST
+      right = new QualRef(left, new Identifier(take(TokenKind.ID)), new SourcePosition(finishpos)); // righter/specific-er ref is higher on AST
       left = right;
     }
 
@@ -298,7 +298,7 @@ public class Parser {
   private Statement parseForUpdateStatement() throws SyntaxError {
     int statement_start = startpos;
     Reference ref = parseReference();
-    switch (token.kind) {
+    switch (kind) {
       case ASSIGN:
         acceptIt();
         Expression assignExpr = parseExpression();
@@ -313,13 +313,13 @@ public class Parser {
       case LPAREN:
         acceptIt();
         ExprList args = new ExprList(); // empty default
-        if (token.kind != TokenKind.RPAREN) {
+        if (kind != TokenKind.RPAREN) {
           args = parseArgList();
         }
         accept(TokenKind.RPAREN);
         return new CallStmt(ref, args, new SourcePosition(statement_start, finishpos));
       default:
-        parseError(token, "Invalid statement for for loop's update. (can only be of assignment or method call in miniJava)");
+        parseError(current(), "Invalid statement for for loop's update. (can only be of assignment or method call in miniJava)");
         return null;
     }
   }
@@ -327,7 +327,7 @@ public class Parser {
   private Statement parseStatement() throws SyntaxError {
     int statement_start = startpos;
     // checks RETURN, IF, WHILE, and LCURLY cases
-    switch (token.kind) {
+    switch (kind) {
       // ReturnStmt
       case RETURN:
         acceptIt();
@@ -365,16 +365,16 @@ public class Parser {
         acceptIt();
         Statement forInit = null; Expression forCond = null; Statement forUpdate = null;
         accept(TokenKind.LPAREN);
-        if (token.kind != TokenKind.SEMICOLON) {
+        if (kind != TokenKind.SEMICOLON) {
           forInit = parseStatement();
         } else {
           acceptIt();
         }
-        if (token.kind != TokenKind.SEMICOLON) {
+        if (kind != TokenKind.SEMICOLON) {
           forCond = parseExpression();
         } 
         accept(TokenKind.SEMICOLON);
-        if (token.kind != TokenKind.RPAREN) {
+        if (kind != TokenKind.RPAREN) {
           forUpdate = parseForUpdateStatement();
         }
         accept(TokenKind.RPAREN);
@@ -385,7 +385,7 @@ public class Parser {
       case LCURLY:
         acceptIt();
         StatementList statements = new StatementList();
-        while (token.kind != TokenKind.RCURLY) {
+        while (kind != TokenKind.RCURLY) {
           statements.add(parseStatement());
         }
         accept(TokenKind.RCURLY);
@@ -400,18 +400,18 @@ public class Parser {
     // oh no! both TypeStarters and ReferenceStarters can include ID
     // we parse an additional char before determining Type- or Reference- Statements
     // REVIEW: (1) if you change `parseType` or `parseReference`, you should change this
-    if (token.kind == TokenKind.ID) {
+    if (kind == TokenKind.ID) {
       int tbd_start = startpos;
-      Token firstId = acceptIt();
+      Token firstId = takeIt();
       // Reference starting statement will only have PERIOD or ASSIGN after first id
       if (acceptCheck(TokenKind.PERIOD)) { // Reference with an attribute
-        if (token.kind == TokenKind.THIS) {
+        if (kind == TokenKind.THIS) {
           // check added to parseReference(), but kept anyways
-          parseError(token, "Invalid Reference (in parseStatement): `this` cannot be an attribute of another reference.");
+          parseError(current(), "Invalid Reference (in parseStatement): `this` cannot be an attribute of another reference.");
         }
         Reference fullRef = parseReference(new IdRef(new Identifier(firstId), new SourcePosition(tbd_start, finishpos))); // guaranteed as current token chain is ID.ID(.ID)* 
         return parseStatement_Reference(fullRef, statement_start);
-      } else if (token.kind == TokenKind.ID) { // two consecutive IDs must be a Statement->Type
+      } else if (kind == TokenKind.ID) { // two consecutive IDs must be a Statement->Type
         // if (acceptCheck(TokenKind.LSQUARE)) {
         //   accept(TokenKind.RSQUARE);
         // }
@@ -432,22 +432,22 @@ public class Parser {
       }
     }
 
-    if (StarterSets.TypeStarters.contains(token.kind)) {
+    if (StarterSets.TypeStarters.contains(kind)) {
       TypeDenoter type = parseType();
       return parseStatement_Type(type, statement_start);
     }
 
-    if(StarterSets.ReferenceStarters.contains(token.kind)) {
+    if(StarterSets.ReferenceStarters.contains(kind)) {
       Reference reference = parseReference();
       return parseStatement_Reference(reference, statement_start);
     }
 
-    parseError(token, "Invalid Statement - expected valid command but instead got: " + token.kind);
+    parseError(current(), "Invalid Statement - expected valid command but instead got: " + kind);
     return null;
   }
   
   private Statement parseStatement_Type(TypeDenoter type, int statement_start) throws SyntaxError {
-    Token name_token = accept(TokenKind.ID); // second id (varname)
+    Token name_token = take(TokenKind.ID); // second id (varname)
     String name = name_token.spelling;
     int name_pos = name_token.posn.start;
     accept(TokenKind.ASSIGN);
@@ -462,7 +462,7 @@ public class Parser {
   }
 
   private Statement parseStatement_Reference(Reference left, int statement_start) throws SyntaxError {
-    switch (token.kind) {
+    switch (kind) {
       case ASSIGN:
         acceptIt();
         Expression value = parseExpression();
@@ -474,14 +474,14 @@ public class Parser {
       case LPAREN:
         acceptIt();
         ExprList args = new ExprList(); // empty default
-        if (token.kind != TokenKind.RPAREN) { // EBNF '?'
+        if (kind != TokenKind.RPAREN) { // EBNF '?'
           args = parseArgList();
         }
         accept(TokenKind.RPAREN);
         accept(TokenKind.SEMICOLON);
         return new CallStmt(left, args, new SourcePosition(statement_start, finishpos));
       default:
-        parseError(token, "Invalid Statement - After a reference, parser expects ASSIGNS, LSQUARE, or LPAREN");
+        parseError(current(), "Invalid Statement - After a reference, parser expects ASSIGNS, LSQUARE, or LPAREN");
         return null;
     }
   }
@@ -506,58 +506,58 @@ public class Parser {
 
     public Expression parseE0() throws SyntaxError {
       Expression left = parseE1();
-      while (token.kind == TokenKind.OR) {
+      while (kind == TokenKind.OR) {
         // Token op = acceptIt(); Expression right = parseE[i+1]() is integrated below
-        left = new BinaryExpr(new Operator(acceptIt()), left, parseE1(), new SourcePosition(expr_start, finishpos));
+        left = new BinaryExpr(new Operator(takeIt()), left, parseE1(), new SourcePosition(expr_start, finishpos));
       }
       return left;
     }
 
     Expression parseE1() throws SyntaxError {
       Expression left = parseE2();
-      while (token.kind == TokenKind.AND) {
-        left = new BinaryExpr(new Operator(acceptIt()), left, parseE2(), new SourcePosition(expr_start, finishpos));
+      while (kind == TokenKind.AND) {
+        left = new BinaryExpr(new Operator(takeIt()), left, parseE2(), new SourcePosition(expr_start, finishpos));
       }
       return left;
     }
 
     Expression parseE2() throws SyntaxError {
       Expression left = parseE3();
-      while (token.kind == TokenKind.EQUALS || token.kind == TokenKind.NEQ) {
-        left = new BinaryExpr(new Operator(acceptIt()), left, parseE3(), new SourcePosition(expr_start, finishpos));
+      while (kind == TokenKind.EQUALS || kind == TokenKind.NEQ) {
+        left = new BinaryExpr(new Operator(takeIt()), left, parseE3(), new SourcePosition(expr_start, finishpos));
       }
       return left;
     }
 
     Expression parseE3() throws SyntaxError {
       Expression left = parseE4();
-      while (token.kind == TokenKind.LEQ || token.kind == TokenKind.LT
-          || token.kind == TokenKind.GEQ || token.kind == TokenKind.GT) {
-        left = new BinaryExpr(new Operator(acceptIt()), left, parseE4(), new SourcePosition(expr_start, finishpos));
+      while (kind == TokenKind.LEQ || kind == TokenKind.LT
+          || kind == TokenKind.GEQ || kind == TokenKind.GT) {
+        left = new BinaryExpr(new Operator(takeIt()), left, parseE4(), new SourcePosition(expr_start, finishpos));
       }
       return left;
     }
 
     Expression parseE4() throws SyntaxError {
       Expression left = parseE5();
-      while (token.kind == TokenKind.ADD || token.kind == TokenKind.MINUS) {
-        left = new BinaryExpr(new Operator(acceptIt()), left, parseE5(), new SourcePosition(expr_start, finishpos));
+      while (kind == TokenKind.ADD || kind == TokenKind.MINUS) {
+        left = new BinaryExpr(new Operator(takeIt()), left, parseE5(), new SourcePosition(expr_start, finishpos));
       }
       return left;
     }
 
     Expression parseE5() throws SyntaxError {
       Expression left = parseE6();
-      while (token.kind == TokenKind.MULTIPLY || token.kind == TokenKind.DIVIDE) {
-        left = new BinaryExpr(new Operator(acceptIt()), left, parseE6(), new SourcePosition(expr_start, finishpos));
+      while (kind == TokenKind.MULTIPLY || kind == TokenKind.DIVIDE) {
+        left = new BinaryExpr(new Operator(takeIt()), left, parseE6(), new SourcePosition(expr_start, finishpos));
       }
       return left;
     }
 
     Expression parseE6() throws SyntaxError { 
       // UnaryExpr
-      if (token.kind == TokenKind.NOT || token.kind == TokenKind.MINUS) {
-        Token unop = acceptIt();
+      if (kind == TokenKind.NOT || kind == TokenKind.MINUS) {
+        Token unop = takeIt();
         return new UnaryExpr(new Operator(unop), parseE6(), new SourcePosition(expr_start, finishpos));
       }
       
@@ -580,20 +580,20 @@ public class Parser {
       int expr_start = startpos;
       // TODO: make sure switch cases don't match starters(Reference)
       boolean matchedSwitch = true;
-      switch (token.kind) {
+      switch (kind) {
         // LiteralExpr
         //    IntLiteral
         case NUM:
-          return new LiteralExpr(new IntLiteral(acceptIt()), new SourcePosition(expr_start, finishpos));
+          return new LiteralExpr(new IntLiteral(takeIt()), new SourcePosition(expr_start, finishpos));
 
         //    BooleanLiteral
         case TRUE:
         case FALSE:
-          return new LiteralExpr(new BooleanLiteral(acceptIt()), new SourcePosition(expr_start, finishpos));
+          return new LiteralExpr(new BooleanLiteral(takeIt()), new SourcePosition(expr_start, finishpos));
 
         //    NullLiteral
         case NULL:
-          return new LiteralExpr(new NullLiteral(acceptIt()), new SourcePosition(expr_start, finishpos));
+          return new LiteralExpr(new NullLiteral(takeIt()), new SourcePosition(expr_start, finishpos));
 
         // NewExpr
         case NEW:
@@ -608,13 +608,13 @@ public class Parser {
             return new NewArrayExpr(new BaseType(TypeKind.INT, new SourcePosition(startpos)), arraySize, new SourcePosition(expr_start, finishpos));
           } 
           
-          if (token.kind == TokenKind.ID) {
-            Token id = acceptIt();
+          if (kind == TokenKind.ID) {
+            Token id = takeIt();
 
             // NewObjectExpr
             if (acceptCheck(TokenKind.LPAREN)) {
               ExprList args = new ExprList();
-              if (token.kind != TokenKind.RPAREN) { // EBNF ?
+              if (kind != TokenKind.RPAREN) { // EBNF ?
                 args = parseArgList();
               }
               accept(TokenKind.RPAREN);
@@ -644,10 +644,10 @@ public class Parser {
         return null; // should not be able to get here...
 
       // UnaryExpr (should be taken by earlier priority)
-      // } else if (StarterSets.Unops.contains(token.kind)) {
+      // } else if (StarterSets.Unops.contains(kind)) {
       //   acceptIt();
       //   parseExpression();
-      } else if (StarterSets.ReferenceStarters.contains(token.kind)) { // parse Reference
+      } else if (StarterSets.ReferenceStarters.contains(kind)) { // parse Reference
         // what if it passes through all the alternations and doesn't get caught??
         // } else { // parse Reference
         Reference ref = parseReference();
@@ -661,7 +661,7 @@ public class Parser {
         // CallExpr
         } else if (acceptCheck(TokenKind.LPAREN)) {
           ExprList args = new ExprList();
-          if (token.kind != TokenKind.RPAREN) { // EBNF ?
+          if (kind != TokenKind.RPAREN) { // EBNF ?
             args = parseArgList();
           }
           accept(TokenKind.RPAREN);
@@ -677,7 +677,7 @@ public class Parser {
 
       } else {
         // none of the required alternations a in Expr := ( a1 | a2 | ... )(binop Expr)* was selected
-        parseError(token, "Expecting a valid expression before a binary operator.");
+        parseError(current(), "Expecting a valid expression before a binary operator.");
         return null;
       }
     }
@@ -690,8 +690,8 @@ public class Parser {
   /**
    * accept current token and advance to next token
    */
-  private Token acceptIt() throws SyntaxError {
-    return accept(token.kind);
+  private void acceptIt() throws SyntaxError {
+    accept(kind);
   }
 
   /**
@@ -703,7 +703,7 @@ public class Parser {
    * @throws SyntaxError I don't think this is possible...
    */
   private boolean acceptCheck(TokenKind tokenkind) throws SyntaxError {
-    if (token.kind == tokenkind) {
+    if (kind == tokenkind) {
       acceptIt();
       return true;
     } else {
@@ -714,28 +714,55 @@ public class Parser {
   /**
    * verify that current token in input matches expected token and advance to next token
    * @param expectedToken
-   * @return the current token
    * @throws SyntaxError  if match fails
    * SIDE EFFECTS: startpos and finishpos are updated
    */
-  private Token accept(TokenKind expectedTokenKind) throws SyntaxError {
-    if (token.kind == expectedTokenKind) {
+  private void accept(TokenKind expectedTokenKind) throws SyntaxError {
+    if (kind == expectedTokenKind) {
       if (trace) {
         pTrace();
       }
-      Token old = token;
-      finishpos = old.posn == null ? finishpos : old.posn.finish;
-      token = scanner.scan();
-      startpos = token.posn == null ? startpos : token.posn.start;
-      return old;
+      finishpos = scanner.endLine();
+      kind = scanner.next();
+      startpos = scanner.line();
     }
     else {
-      parseError(token, "Expecting '" + expectedTokenKind +
-          "' but found '" + token.kind + "' with spelling: " + token.spelling);
-      return token;
+      parseError(current(), "Expecting '" + expectedTokenKind +
+          "' but found '" + kind + "' with spelling: " + scanner.spelling());
     }
   }
 
+  /**
+   * like accept, for tokens that end up in the AST
+   * @return the accepted token
+   */
+  private Token take(TokenKind expectedTokenKind) throws SyntaxError {
+    Token old = current();
+    accept(expectedTokenKind);
+    return old;
+  }
+
+  private Token takeIt() throws SyntaxError {
+    return take(kind);
+  }
+
+  /**
+   * like accept, when only the spelling of the token is needed
+   * @return the spelling of the accepted token
+   */
+  private String acceptSpelling(TokenKind expectedTokenKind) throws SyntaxError {
+    String spelling = scanner.spelling();
+    accept(expectedTokenKind);
+    return spelling;
+  }
+
+  /**
+   * @return the current token as a Token object
+   */
+  private Token current() {
+    return new Token(kind, scanner.spelling(), new SourcePosition(scanner.line(), scanner.endLine()));
+  }
+
   /**
    * report parse error and unwind call stack to start of parse
    * @param e  string with error detail
@@ -751,13 +778,13 @@ public class Parser {
 
   // show parse stack whenever terminal is  accepted
   private void pTrace() {
-    StackTraceElement [] stl = Thread.currentThread().getStackTrace();
     if (debugMode) {
+      StackTraceElement [] stl = Thread.currentThread().getStackTrace();
       for (int i = stl.length - 1; i > 0 ; i--) {
         if(stl[i].toString().contains("parse"))
           System.out.println(stl[i]);
       }
-      System.out.println("accepting: " + token.kind + " (\"" + token.spelling + "\")");
+      System.out.println("accepting: " + kind + " (\"" + scanner.spelling() + "\")");
       System.out.println();
     }
   }
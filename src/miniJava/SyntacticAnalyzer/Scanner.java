@@ -4,25 +4,53 @@ import java.io.*;
 import miniJava.ErrorReporter;
 
 public class Scanner {
-  private InputStream inputStream;
+  private final static int BUFFER_SIZE = 1 << 16;
+
+  private InputStream inputStream; // null when the whole source is in buffer
 	private ErrorReporter reporter;
 
+  // input is read a block at a time; chars are taken from buffer[bufferPos..bufferLimit)
+  private byte[] buffer;
+  private int bufferPos;
+  private int bufferLimit;
+  private int bufferBase; // offset in the source of buffer[0]
+
 	private char currentChar;
-	private StringBuilder currentSpelling;
+  private int charPos;    // index of currentChar in buffer
   private int currentLine;
 
-  // mutable flag stating if currentChar is in a comment or not
-  private enum Comment {NONE, LINEAR /* // comments */, BLOCK}
-  private Comment commentMode = Comment.NONE;
-	
+  // the token found by the last call to next(), kept in primitives rather than a Token
+  private TokenKind tokenKind;
+  private int tokenStart;  // index of its first char in buffer
+  private int tokenLength;
+  private int tokenLine, tokenEndLine;
+  private int tokenSpelling; // id in spellings, -1 if spelled by its kind
+
+  private SpellingTable spellings = new SpellingTable();
+
 	// true when end of line is found
-	private boolean eot = false; 
+	private boolean eot = false;
 
 
 	public Scanner(InputStream inputStream, ErrorReporter reporter) {
+		this(inputStream, new byte[BUFFER_SIZE], 0, reporter);
+	}
+
+  /**
+   * Scans a source held entirely in memory, such as a whole file read at once
+   */
+  public Scanner(byte[] source, ErrorReporter reporter) {
+    this(null, source, source.length, reporter);
+  }
+
+  private Scanner(InputStream inputStream, byte[] buffer, int bufferLimit, ErrorReporter reporter) {
 		this.inputStream = inputStream;
 		this.reporter = reporter;
+    this.buffer = buffer;
+    this.bufferPos = 0;
+    this.bufferLimit = bufferLimit;
     this.currentLine = 1;
+    this.tokenStart = -1;
 
 		// initialize scanner state
 		readChar();
@@ -32,77 +60,99 @@ public class Scanner {
 	 * Automatically skips whitespace and builds spelling for the current token.
    * If there is any error, first sanity check: print out the Token and determine if the spelling
    * matches the TokenKind.
-   * 
+   *
 	 */
 	public Token scan() {
+    next();
+    return new Token(tokenKind, spelling(), new SourcePosition(tokenLine, tokenEndLine));
+	}
 
-    SourcePosition position = new SourcePosition(currentLine, currentLine);
-
-		// skip whitespace 
-		while (!eot && isWhitespace(currentChar)) {
-      skipIt();
-    }
-
-		// start of a token: collect spelling and identify token kind
-		currentSpelling = new StringBuilder();
-		TokenKind kind = scanToken();
-		String spelling = currentSpelling.toString();
+  /**
+   * Scans the rest of the input into a TokenStream, which ends with EOT or the first ERROR
+   */
+  public TokenStream tokenize() {
+    TokenStream tokens = new TokenStream(spellings);
+    do {
+      next();
+      tokens.add(tokenKind, offset(), tokenLength, tokenLine, tokenEndLine, tokenSpelling);
+    } while (tokenKind != TokenKind.EOT && tokenKind != TokenKind.ERROR);
+    return tokens;
+  }
 
-    // handle comment, recursively call scan until comments have ended
-    if (kind == TokenKind.COMMENT) {
-      // System.out.println("finding end of comment..." + commentMode);
-      if (commentMode == Comment.LINEAR) {
-        while (currentChar != '\n' && currentChar != '\r' && !eot) {
-          skipIt();
-        }
-      } else { // commentMode == Comment.BLOCK
-        while (!eot) {
-          if (currentChar == '*') {
-            skipIt();
-            if (currentChar == '/') {
-              skipIt();
-              commentMode = Comment.NONE;
-              break;
-            }
-          } else {
-            skipIt();
-          }
-        } 
-        // edge case where multiline comment hasn't terminated by EOT
-        if (eot && commentMode == Comment.BLOCK) {
-          scanError("Expected `*/` to close the multiline comment before the end of file.");
-        }
+  /**
+   * Scans the next token without allocating it; its properties are then
+   * available from kind(), spelling(), line() and endLine()
+   * @return the kind of token found
+   */
+  public TokenKind next() {
+    TokenKind kind;
+    int line;
+    do {
+      line = currentLine;
+
+		  // skip whitespace
+		  while (!eot && isWhitespace(currentChar)) {
+        skipIt();
       }
 
-      // System.out.println("exiting comment...");
-      commentMode = Comment.NONE; // not needed, we 
-      return scan();
-    }
+		  // start of a token: mark it in the buffer and identify token kind
+      tokenStart = charPos;
+		  kind = scanToken();
+    } while (kind == TokenKind.COMMENT);
+
+    tokenKind = kind;
+    tokenLength = charPos - tokenStart;
+    tokenLine = line;
+    tokenEndLine = currentLine;
+    tokenSpelling = (kind == TokenKind.ID || kind == TokenKind.NUM || kind == TokenKind.ERROR)
+        ? spellings.intern(buffer, tokenStart, tokenLength)
+        : -1;
+    tokenStart = -1;
 
     if (kind == TokenKind.ERROR) {
-      scanError("Attempting to scan '" + spelling + "' but could not find a match.");
+      scanError("Attempting to scan '" + spelling() + "' but could not find a match.");
     }
-
-		// return new token
-    position.finish = currentLine;
-    Token t = new Token(kind, spelling, position);
-    // t.print();
-		return t;
+    return kind;
 	}
 
+  public TokenKind kind() {
+    return tokenKind;
+  }
+
+  public String spelling() {
+    return tokenSpelling < 0 ? spellingOf(tokenKind) : spellings.get(tokenSpelling);
+  }
+
+  // SourcePosition start of the last token
+  public int line() {
+    return tokenLine;
+  }
+
+  // SourcePosition finish of the last token
+  public int endLine() {
+    return tokenEndLine;
+  }
+
+  private int offset() {
+    return bufferBase + charPos - tokenLength;
+  }
+
   /**
    * Reads input stream and determines if it matches any token.
+   * Comments are skipped here and reported as COMMENT.
    * @return TokenKind identified
    */
-  public TokenKind scanToken() {
+  private TokenKind scanToken() {
     if (eot) {
       return TokenKind.EOT;
     }
 
     // identifiers and keywords
     if (isLetter(currentChar)) {// in regular Java _varName is allowed, miniJava pa1 says it must start w/ letter
-      takeTill( (c) -> { return isLetter(c) || isDigit(c) || c == '_'; });
-      return TokenKind.ID;
+      while (isLetter(currentChar) || isDigit(currentChar) || currentChar == '_') {
+        takeIt();
+      }
+      return keyword(buffer, tokenStart, charPos - tokenStart);
     }
 
     switch (currentChar) {
@@ -136,7 +186,7 @@ public class Scanner {
       case ']':
         takeIt();
         return TokenKind.RSQUARE;
-        
+
       // binary and unary operators ( starters(unop) \subset starters(binop) )
       case '+':
         takeIt();
@@ -151,11 +201,13 @@ public class Scanner {
         takeIt();
         if (currentChar == '*') {
           takeIt();
-          commentMode = Comment.BLOCK;
+          skipBlockComment();
           return TokenKind.COMMENT;
         } else if (currentChar == '/') {
           takeIt();
-          commentMode = Comment.LINEAR;
+          while (currentChar != '\n' && currentChar != '\r' && !eot) {
+            skipIt();
+          }
           return TokenKind.COMMENT;
         }
         return TokenKind.DIVIDE;
@@ -205,7 +257,9 @@ public class Scanner {
       // numbers
       case '0': case '1': case '2': case '3': case '4':
       case '5': case '6': case '7': case '8': case '9':
-        takeTill( (c) -> { return isDigit(c); } );
+        while (isDigit(currentChar)) {
+          takeIt();
+        }
         return TokenKind.NUM;
 
       default:
@@ -215,30 +269,134 @@ public class Scanner {
 
   }
 
+  /**
+   * skips the rest of a comment after its opening slash-star
+   */
+  private void skipBlockComment() {
+    while (!eot) {
+      if (currentChar == '*') {
+        skipIt();
+        if (currentChar == '/') {
+          skipIt();
+          return;
+        }
+      } else {
+        skipIt();
+      }
+    }
+    // edge case where multiline comment hasn't terminated by EOT
+    scanError("Expected `*/` to close the multiline comment before the end of file.");
+  }
+
+  // KEYWORDS, found by a perfect hash on length, first and last char
+
+  private final static String[] keywordSpelling = new String[32];
+  private final static TokenKind[] keywordKind = new TokenKind[32];
+  private final static String[] fixedSpelling = new String[TokenKind.values().length];
+
+  private static int keywordHash(int length, int first, int last) {
+    return (length + 11 * first + 12 * last) & 31;
+  }
+
+  private static void keyword(String spelling, TokenKind kind) {
+    int h = keywordHash(spelling.length(), spelling.charAt(0), spelling.charAt(spelling.length() - 1));
+    if (keywordSpelling[h] != null)
+      throw new IllegalStateException("keyword hash is not perfect: " + spelling + ", " + keywordSpelling[h]);
+    keywordSpelling[h] = spelling;
+    keywordKind[h] = kind;
+    fixedSpelling[kind.ordinal()] = spelling;
+  }
+
+  private static void symbol(String spelling, TokenKind kind) {
+    fixedSpelling[kind.ordinal()] = spelling;
+  }
+
+  static {
+    // primatives/typing
+    keyword("int", TokenKind.INT);
+    keyword("boolean", TokenKind.BOOLEAN);
+    keyword("void", TokenKind.VOID);
+    keyword("class", TokenKind.CLASS);
+
+    // keywords
+    keyword("this", TokenKind.THIS);
+    keyword("new", TokenKind.NEW);
+    keyword("static", TokenKind.STATIC);
+    keyword("true", TokenKind.TRUE);
+    keyword("false", TokenKind.FALSE);
+    keyword("null", TokenKind.NULL);
+
+    // keywords - visibility
+    keyword("public", TokenKind.PUBLIC);
+    keyword("private", TokenKind.PRIVATE);
+
+    // keywords - control flow
+    keyword("return", TokenKind.RETURN);
+    keyword("while", TokenKind.WHILE);
+    keyword("if", TokenKind.IF);
+    keyword("else", TokenKind.ELSE);
+    keyword("for", TokenKind.FOR);
+
+    symbol("", TokenKind.EOT);
+    symbol(";", TokenKind.SEMICOLON);
+    symbol(",", TokenKind.COMMA);
+    symbol(".", TokenKind.PERIOD);
+    symbol("=", TokenKind.ASSIGN);
+    symbol("(", TokenKind.LPAREN);
+    symbol(")", TokenKind.RPAREN);
+    symbol("{", TokenKind.LCURLY);
+    symbol("}", TokenKind.RCURLY);
+    symbol("[", TokenKind.LSQUARE);
+    symbol("]", TokenKind.RSQUARE);
+    symbol("+", TokenKind.ADD);
+    symbol("*", TokenKind.MULTIPLY);
+    symbol("/", TokenKind.DIVIDE);
+    symbol("<", TokenKind.LT);
+    symbol(">", TokenKind.GT);
+    symbol("<=", TokenKind.LEQ);
+    symbol(">=", TokenKind.GEQ);
+    symbol("==", TokenKind.EQUALS);
+    symbol("!=", TokenKind.NEQ);
+    symbol("&&", TokenKind.AND);
+    symbol("||", TokenKind.OR);
+    symbol("-", TokenKind.MINUS);
+    symbol("!", TokenKind.NOT);
+  }
+
+  /**
+   * @return the keyword spelled by source[start, start + length), or ID if it is not one
+   */
+  private static TokenKind keyword(byte[] source, int start, int length) {
+    int h = keywordHash(length, source[start], source[start + length - 1]);
+    String spelling = keywordSpelling[h];
+    if (spelling == null || spelling.length() != length)
+      return TokenKind.ID;
+    for (int i = 0; i < length; i++) {
+      if (spelling.charAt(i) != source[start + i])
+        return TokenKind.ID;
+    }
+    return keywordKind[h];
+  }
+
+  /**
+   * @return the spelling every token of this kind has, null for ID, NUM and ERROR
+   */
+  static String spellingOf(TokenKind kind) {
+    return fixedSpelling[kind.ordinal()];
+  }
+
   /*
   It seems like takeMany(amount), takeRest() (until whitespace) are all
   bad ideas as what if it takes too many or too little
   */
 
   /**
-	 * Appends the current char onto the current spelling and goes to the next char in stream.
+	 * Takes the current char into the current token and goes to the next char in stream.
 	 */
   private void takeIt() {
-		currentSpelling.append(currentChar);
 		nextChar();
 	}
 
-  /**
-	 * Like takeIt() but takes in a boolean function taking in a char argument to see whether
-	 * it should continue 
-	 */
-	private void takeTill(CharIs function) {
-    while (function.isValid(currentChar)) {
-      takeIt();
-    }
-    return;
-	}
-
 	private void skipIt() {
 		nextChar();
 	}
@@ -273,18 +431,47 @@ public class Scanner {
 	}
 
 	private void readChar() {
+		if (bufferPos == bufferLimit && !fillBuffer()) {
+			charPos = bufferLimit;
+			currentChar = (char) -1;
+			eot = true;
+			return;
+		}
+		charPos = bufferPos;
+		currentChar = (char) (buffer[bufferPos++] & 0xFF);
+		if (currentChar == '\n') {
+			currentLine += 1;
+		}
+	}
+
+	/**
+	 * reads the next block of input into buffer, keeping the part of the
+	 * token being scanned that is already in it
+	 * @return false at the end of input
+	 */
+	private boolean fillBuffer() {
+		if (inputStream == null)
+			return false;
+		int keep = tokenStart >= 0 ? tokenStart : bufferLimit;
+		if (keep == 0 && bufferLimit == buffer.length) {
+			buffer = java.util.Arrays.copyOf(buffer, 2 * buffer.length); // token longer than the buffer
+		} else if (keep > 0) {
+			System.arraycopy(buffer, keep, buffer, 0, bufferLimit - keep);
+			bufferBase += keep;
+			bufferLimit -= keep;
+			bufferPos -= keep;
+			if (tokenStart >= 0)
+				tokenStart -= keep;
+		}
 		try {
-			int c = inputStream.read();
-			currentChar = (char) c;
-      if (currentChar == '\n') {
-        currentLine += 1;
-      }
-			if (c == -1) {
-				eot = true;
-			}
+			int n = inputStream.read(buffer, bufferLimit, buffer.length - bufferLimit);
+			if (n <= 0)
+				return false;
+			bufferLimit += n;
+			return true;
 		} catch (IOException e) {
 			scanError("I/O Exception!");
-			eot = true;
+			return false;
 		}
 	}
 
@@ -292,8 +479,3 @@ public class Scanner {
 		reporter.reportError("Scan Error:  " + m);
 	}
 }
-
-@FunctionalInterface
-interface CharIs {
-  boolean isValid(char c);
-}
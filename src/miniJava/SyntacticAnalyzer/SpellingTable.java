@@ -0,0 +1,88 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * Interns the spellings of identifiers and numbers as the scanner finds them,
+ * so that each distinct spelling becomes a single String and a number, however
+ * often it occurs in the source.
+ */
+final class SpellingTable {
+  private String[] spellings = new String[256]; // by id, in order of first occurrence
+  private int size = 0;
+
+  // open addressing: slots hold id + 1, 0 when empty
+  private int[] slots = new int[512];
+  private int[] hashes = new int[256];
+
+  int size() {
+    return size;
+  }
+
+  String get(int id) {
+    return spellings[id];
+  }
+
+  /**
+   * @return the id of the spelling in source[start, start + length), which
+   *         is added to the table the first time it is seen
+   */
+  int intern(byte[] source, int start, int length) {
+    int hash = 0;
+    for (int i = start; i < start + length; i++) {
+      hash = 31 * hash + source[i];
+    }
+
+    int mask = slots.length - 1;
+    for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+      int id = slots[slot] - 1;
+      if (id < 0) {
+        return add(new String(source, start, length, java.nio.charset.StandardCharsets.ISO_8859_1), hash, slot);
+      }
+      if (hashes[id] == hash && matches(spellings[id], source, start, length)) {
+        return id;
+      }
+    }
+  }
+
+  private static boolean matches(String spelling, byte[] source, int start, int length) {
+    if (spelling.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (spelling.charAt(i) != (char) (source[start + i] & 0xFF)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int add(String spelling, int hash, int slot) {
+    if (size == spellings.length) {
+      spellings = java.util.Arrays.copyOf(spellings, 2 * size);
+      hashes = java.util.Arrays.copyOf(hashes, 2 * size);
+    }
+    int id = size++;
+    spellings[id] = spelling;
+    hashes[id] = hash;
+    slots[slot] = id + 1;
+    if (2 * size > slots.length) {
+      rehash();
+    }
+    return id;
+  }
+
+  private void rehash() {
+    slots = new int[2 * slots.length];
+    int mask = slots.length - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = mix(hashes[id]) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = id + 1;
+    }
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,80 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * All the tokens of a source, as produced by Scanner.tokenize(), kept in
+ * parallel primitive arrays instead of one Token object each.  Token i starts
+ * at byte offset(i) of the source and is length(i) bytes long; identifiers and
+ * numbers share one interned spelling per distinct spelling.
+ *
+ * The last token is EOT, or the first ERROR the scanner ran into.
+ */
+public final class TokenStream {
+  private final static TokenKind[] kindOf = TokenKind.values();
+
+  private final SpellingTable spellings;
+  private int size = 0;
+  private byte[] kinds = new byte[1024];
+  private int[] offsets = new int[1024];
+  private int[] lengths = new int[1024];
+  private int[] lines = new int[1024];    // SourcePosition start
+  private int[] endLines = new int[1024]; // SourcePosition finish
+  private int[] spellingIds = new int[1024]; // into spellings, -1 for tokens spelled by their kind
+
+  TokenStream(SpellingTable spellings) {
+    this.spellings = spellings;
+  }
+
+  void add(TokenKind kind, int offset, int length, int line, int endLine, int spellingId) {
+    if (size == kinds.length) {
+      int capacity = 2 * size;
+      kinds = java.util.Arrays.copyOf(kinds, capacity);
+      offsets = java.util.Arrays.copyOf(offsets, capacity);
+      lengths = java.util.Arrays.copyOf(lengths, capacity);
+      lines = java.util.Arrays.copyOf(lines, capacity);
+      endLines = java.util.Arrays.copyOf(endLines, capacity);
+      spellingIds = java.util.Arrays.copyOf(spellingIds, capacity);
+    }
+    kinds[size] = (byte) kind.ordinal();
+    offsets[size] = offset;
+    lengths[size] = length;
+    lines[size] = line;
+    endLines[size] = endLine;
+    spellingIds[size] = spellingId;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public TokenKind kind(int i) {
+    return kindOf[kinds[i]];
+  }
+
+  public int offset(int i) {
+    return offsets[i];
+  }
+
+  public int length(int i) {
+    return lengths[i];
+  }
+
+  public int line(int i) {
+    return lines[i];
+  }
+
+  public int endLine(int i) {
+    return endLines[i];
+  }
+
+  public String spelling(int i) {
+    return spellingIds[i] < 0 ? Scanner.spellingOf(kind(i)) : spellings.get(spellingIds[i]);
+  }
+
+  /**
+   * @return token i as a Token object, as Scanner.scan() would have returned it
+   */
+  public Token token(int i) {
+    return new Token(kind(i), spelling(i), new SourcePosition(lines[i], endLines[i]));
+  }
+}
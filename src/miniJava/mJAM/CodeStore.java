@@ -0,0 +1,231 @@
+/**
+ * mJAM code store being generated
+ */
+package miniJava.mJAM;
+
+import miniJava.ErrorReporter;
+import miniJava.mJAM.Machine.Op;
+import miniJava.mJAM.Machine.Prim;
+import miniJava.mJAM.Machine.Reg;
+
+/**
+ * The instructions of one program, packed as described in Machine, together
+ * with the code top register CT, the program's type map and its debug symbols.
+ * Each compilation
+ * emits into a CodeStore of its own, so that several programs can be generated
+ * at the same time.
+ */
+public class CodeStore {
+
+	private int[] code;
+	private int CT;
+	private TypeMap types;
+	private DebugInfo debug;
+	private ErrorReporter reporter; // where emit and patch report errors, or null for System.out
+
+	public CodeStore() {
+		this((ErrorReporter) null);
+	}
+
+	/**
+	 * @param reporter  reporter of the compilation, which fails if emit or
+	 *                  patch find an error
+	 */
+	public CodeStore(ErrorReporter reporter) {
+		this.reporter = reporter;
+		code = new int[Machine.initialCodeSize * Machine.instrWords];
+		CT = Machine.CB;
+		types = new TypeMap();
+		debug = new DebugInfo();
+	}
+
+	/**
+	 * @param code  instructions packed as in Machine, exactly one per
+	 *              instruction (as returned by ObjectFile.readCode)
+	 * @param types  type map of the program, null if it has none
+	 * @param debug  debug symbols of the program, null if it has none
+	 */
+	public CodeStore(int[] code, TypeMap types, DebugInfo debug) {
+		this.code = code;
+		CT = Machine.CB + code.length / Machine.instrWords;
+		this.types = types;
+		this.debug = debug;
+	}
+
+	public CodeStore(int[] code, TypeMap types) {
+		this(code, types, null);
+	}
+
+	/**
+	 * @return the type map filled in as the code is generated, or null for
+	 *         a program read without one
+	 */
+	public TypeMap getTypes() {
+		return types;
+	}
+
+	/**
+	 * @return the debug symbols filled in as the code is generated, or null
+	 *         for a program read without them
+	 */
+	public DebugInfo getDebugInfo() {
+		return debug;
+	}
+
+	/**
+	 * @return a copy of the packed instructions in [CB, CT), exactly
+	 *         instrWords words per instruction
+	 */
+	public int[] toArray() {
+		return java.util.Arrays.copyOf(code, (CT - Machine.CB) * Machine.instrWords);
+	}
+
+	/**
+	 * Replaces all the instructions with code, packed exactly one per
+	 * instruction, as an optimizer leaves them
+	 */
+	void replaceCode(int[] code) {
+		this.code = code;
+		CT = Machine.CB + code.length / Machine.instrWords;
+	}
+
+	/**
+	 * @return a copy of the instruction at addr (relative to CB) in unpacked form
+	 */
+	public Instruction getInstruction(int addr) {
+		int word = code[addr * Machine.instrWords];
+		return new Instruction(Machine.opOf(word), Machine.nOf(word), Machine.rOf(word), code[addr * Machine.instrWords + 1]);
+	}
+
+	/**
+	 * Stores an instruction at addr (relative to CB), which must be within the code store
+	 */
+	public void setInstruction(int addr, int op, int n, int r, int d) {
+		code[addr * Machine.instrWords] = Machine.pack(op, n, r);
+		code[addr * Machine.instrWords + 1] = d;
+	}
+
+	/**
+	 * Makes room for at least size instructions in the code store, keeping
+	 * the instructions already in it
+	 */
+	public void ensureCapacity(int size) {
+		int capacity = code.length / Machine.instrWords;
+		if (size <= capacity)
+			return;
+		int newSize = (int) Math.min(Math.max(2L * capacity, size), Machine.maxCodeSize);
+		code = java.util.Arrays.copyOf(code, newSize * Machine.instrWords);
+	}
+
+	/**
+	 * Places an instruction, with the given fields, into the next position in the code store
+	 * @param op - operation
+	 * @param n - length
+	 * @param r - register
+	 * @param d - displacement
+	 */
+	public void emit(Op op, int n, Reg r, Prim d) {
+		emit(op.ordinal(), n, r.ordinal(), d.ordinal());
+	}
+
+	/**
+	 * emit operation with single literal argument d (n,r not used).  These are
+	 * operations like LOADL 44, PUSH 3, and CALLD 1
+	 */
+	public void emit(Op op, int d) {
+		emit(op.ordinal(), 0, 0, d);
+	}
+
+	/**
+	 * emit "call primitive operation" (operation built-in to mJAM).  This
+	 * generates  CALL primitiveop[PB]
+	 */
+	public void emit(Prim d) {
+		emit(Op.CALL.ordinal(), 0, Reg.PB.ordinal(), d.ordinal());
+	}
+
+	/**
+	 * emit operations without arguments.  These are operations like
+	 * LOADI and STOREI
+	 */
+	public void emit(Op op) {
+		emit(op, 0, 0, 0);
+	}
+
+	/**
+	 * emit operation with register r and integer displacement.  These are
+	 * operations like JUMP 25[CB] and LOAD 6[LB]
+	 */
+	public void emit(Op op, Reg r, int d) {
+		emit(op.ordinal(), 0, r.ordinal(), d);
+	}
+
+	/**
+	 * emit operation with n field, and register r and integer displacement.  These are
+	 * operations like JUMPIF (1) 25[CB].  In the assembly code the value of n is shown
+	 * in parens.
+	 */
+	public void emit(Op op, int n, Reg r, int d) {
+		emit(op.ordinal(), n, r.ordinal(), d);
+	}
+
+	/**
+	 * emit operation with integer n, r, d.  These are operations
+	 * like RETURN (1) 3  and HALT (4) 0.  For RETURN the value
+	 * of d is the number of caller args to pop off the callers
+	 * stack and n is the number of values to return at caller stack
+	 * top.   n must be 0 or 1.
+	 */
+	public void emit(Op op, int n, int r, int d) {
+		emit(op.ordinal(), n, r, d);
+	}
+
+	/**
+	 * helper operation for emit using integer values
+	 */
+	private void emit(int op, int n, int r, int d) {
+		if (n > 255) {
+			error("length of operand can't exceed 255 words");
+			n = 255; // to allow code generation to continue
+		}
+		if (CT >= Machine.maxCodeSize) {
+			error("mJAM: code segment capacity exceeded");
+			return;
+		}
+		ensureCapacity(CT + 1);
+
+		setInstruction(CT, op, n, r, d);
+		CT = CT + 1;
+	}
+
+	/**
+	 * @return address (relative to CB) of next instruction to be generated
+	 */
+	public int nextInstrAddr() {
+		return CT;
+	}
+
+	/**
+	 * Update the displacement component of the (JUMP or CALL) instruction at addr
+	 * @param addr
+	 * @param displacement
+	 */
+	public void patch(int addr, int displacement) {
+		if (addr < 0 || addr >= CT) {
+			error("patch:  address of instruction to be patched is out of range");
+			return;
+		}
+		if (displacement < 0 || displacement > CT) {
+			error("patch:  target address of patch is out of range");
+			return;
+		}
+		code[addr * Machine.instrWords + 1] = displacement;
+	}
+
+	private void error(String message) {
+		if (reporter != null)
+			reporter.reportError(message);
+		else
+			System.out.println(message);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * mJAM garbage collector
+ */
+package miniJava.mJAM;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Sliding mark-compact collector for the heap of a VirtualMachine.
+ *
+ * The collector is precise: it only follows data words whose reference tag is
+ * set. The machine tags the words that receive the result of newobj or newarr,
+ * the words saving OB in a frame, and every copy of a tagged word; whatever
+ * else it writes is untagged. Roots are the tagged words of the stack, which
+ * hold the static fields, locals, arguments and temporaries, plus the OB
+ * register.
+ *
+ * Instances that the program's type map says can hold no references, such as
+ * int arrays, are never scanned.
+ *
+ * Live objects slide down towards HB in address order, so the heap stays one
+ * contiguous run of objects from HB to HT and allocation stays a bump of HT.
+ */
+final class Collector {
+
+	// tags held for each data word in VirtualMachine.refs: REF for a word
+	// holding a reference, SCALARS for the header of an instance that the type
+	// map says can hold none, such as an int[]
+	final static byte REF = 1, SCALARS = 2;
+
+	private int collections = 0;
+	private long wordsReclaimed = 0;
+	private long totalPauseNanos = 0, maxPauseNanos = 0;
+
+	/**
+	 * Collects the heap of vm, lowering vm.HT to the end of the live objects
+	 * @return the number of words reclaimed
+	 */
+	int collect(VirtualMachine vm) {
+		long start = System.nanoTime();
+		int[] data = vm.data;
+		byte[] refs = vm.refs;
+		int[] allocSites = vm.allocSites;
+		int hb = vm.HB, ht = vm.HT;
+		BitSet marked = mark(vm);
+		if (vm.profiler != null)
+			vm.profiler.sample(vm, marked);
+
+		// PLAN, giving each live object its address once the heap is compacted;
+		// both arrays are in address order
+		int[] from = new int[Math.max(marked.cardinality(), 1)];
+		int[] to = new int[from.length];
+		int live = 0, free = hb;
+		for (int obj = marked.nextSetBit(0); obj >= 0; obj = marked.nextSetBit(obj + 1)) {
+			from[live] = hb + obj;
+			to[live] = free + 2;
+			free += data[hb + obj - 1] + 2;
+			live++;
+		}
+
+		// UPDATE every reference to its object's new address
+		for (int addr = VirtualMachine.SB; addr < vm.ST; addr++) {
+			if (refs[addr] == REF)
+				data[addr] = forward(data[addr], from, to, live);
+		}
+		vm.OB = forward(vm.OB, from, to, live);
+		for (int i = 0; i < live; i++) {
+			if (refs[from[i] - 2] == SCALARS)
+				continue;
+			for (int addr = from[i], end = from[i] + data[from[i] - 1]; addr < end; addr++) {
+				if (refs[addr] == REF)
+					data[addr] = forward(data[addr], from, to, live);
+			}
+		}
+
+		// SLIDE each object, header and tags included, down to its new address
+		for (int i = 0; i < live; i++) {
+			int size = data[from[i] - 1] + 2;
+			if (from[i] != to[i]) {
+				System.arraycopy(data, from[i] - 2, data, to[i] - 2, size);
+				System.arraycopy(refs, from[i] - 2, refs, to[i] - 2, size);
+				if (allocSites != null)
+					allocSites[to[i] - 2] = allocSites[from[i] - 2];
+			}
+		}
+		// the words above HT are kept zero for allocation
+		Arrays.fill(data, free, ht, 0);
+		Arrays.fill(refs, free, ht, (byte) 0);
+		vm.HT = free;
+
+		long pause = System.nanoTime() - start;
+		collections++;
+		wordsReclaimed += ht - free;
+		totalPauseNanos += pause;
+		maxPauseNanos = Math.max(maxPauseNanos, pause);
+		return ht - free;
+	}
+
+	/**
+	 * Finds the objects reachable from the roots through tagged words
+	 * @return the set of reachable objects, by address less HB
+	 */
+	static BitSet mark(VirtualMachine vm) {
+		int[] data = vm.data;
+		byte[] refs = vm.refs;
+		int hb = vm.HB, ht = vm.HT;
+		BitSet marked = new BitSet(ht - hb);
+		int[] pending = new int[64];
+		int top = 0;
+		for (int addr = VirtualMachine.SB; addr <= vm.ST; addr++) {
+			int ref = addr < vm.ST ? (refs[addr] == REF ? data[addr] : Machine.nullRep) : vm.OB;
+			if (isObject(ref, hb, ht) && !marked.get(ref - hb)) {
+				marked.set(ref - hb);
+				if (top == pending.length)
+					pending = Arrays.copyOf(pending, 2 * top);
+				pending[top++] = ref;
+			}
+		}
+		while (top > 0) {
+			int obj = pending[--top];
+			if (refs[obj - 2] == SCALARS)
+				continue;
+			for (int addr = obj, end = obj + data[obj - 1]; addr < end; addr++) {
+				int ref = data[addr];
+				if (refs[addr] == REF && isObject(ref, hb, ht) && !marked.get(ref - hb)) {
+					marked.set(ref - hb);
+					if (top == pending.length)
+						pending = Arrays.copyOf(pending, 2 * top);
+					pending[top++] = ref;
+				}
+			}
+		}
+		return marked;
+	}
+
+	private static boolean isObject(int ref, int hb, int ht) {
+		return ref >= hb + 2 && ref <= ht;
+	}
+
+	private static int forward(int ref, int[] from, int[] to, int live) {
+		int i = Arrays.binarySearch(from, 0, live, ref);
+		return i >= 0 ? to[i] : ref;
+	}
+
+	// STATISTICS
+
+	int getCollections() {
+		return collections;
+	}
+
+	long getWordsReclaimed() {
+		return wordsReclaimed;
+	}
+
+	long getTotalPauseNanos() {
+		return totalPauseNanos;
+	}
+
+	long getMaxPauseNanos() {
+		return maxPauseNanos;
+	}
+
+	/**
+	 * @return a line summarizing the collections so far
+	 */
+	public String toString() {
+		return "Garbage collector ran " + collections + " time" + (collections == 1 ? "" : "s")
+				+ ", reclaimed " + wordsReclaimed + " words, paused "
+				+ String.format("%.3f ms in total, %.3f ms at most.", totalPauseNanos / 1e6, maxPauseNanos / 1e6);
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * mJAM CPU profiler
+ */
+package miniJava.mJAM;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the instructions a VirtualMachine executes at each code address, and
+ * every interval instructions samples the call stack by following the dynamic
+ * links from LB, as dump does.
+ *
+ * It also counts how often each run of up to MAX_SEQUENCE instructions at
+ * consecutive addresses executes one after the other, so that the sequences
+ * executed most, by their operations, can be fused into superinstructions.
+ *
+ * Code addresses are named by the program's debug symbols as
+ * Class.method:line; the code before main, or any the symbols do not cover,
+ * is named by its address.
+ */
+final class CpuProfiler {
+
+	/** longest instruction sequence counted */
+	final static int MAX_SEQUENCE = 4;
+
+	private final int[] code;
+	private final DebugInfo debug;
+	private final int interval;
+	private int untilSample;
+	// instructions executed, by code address
+	private final long[] counts;
+	private long instructions = 0;
+	// sequences[k - 2][a]: times the k instructions from code address a were
+	// executed one after the other, and the length of the run of consecutive
+	// addresses ending at the last instruction executed
+	private final long[][] sequences;
+	private int lastAddr = -1, run = 0;
+	// samples of each call stack, by its code addresses from the outermost
+	// frame in
+	private final Map<Stack, long[]> samples = new HashMap<Stack, long[]>();
+
+	private final static class Stack {
+		final int[] addrs;
+
+		Stack(int[] addrs) {
+			this.addrs = addrs;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Stack && Arrays.equals(addrs, ((Stack) o).addrs);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(addrs);
+		}
+	}
+
+	/**
+	 * @param interval  instructions between call stack samples, at least 1
+	 */
+	/**
+	 * @param code  the program, packed as in CodeStore
+	 * @param interval  instructions between call stack samples, at least 1
+	 */
+	CpuProfiler(int[] code, DebugInfo debug, int interval) {
+		if (interval < 1)
+			throw new IllegalArgumentException("invalid sampling interval " + interval);
+		this.code = code;
+		this.debug = debug;
+		this.interval = interval;
+		untilSample = interval;
+		counts = new long[code.length / Machine.instrWords];
+		sequences = new long[MAX_SEQUENCE - 1][counts.length];
+	}
+
+	/** Counts the instruction at vm.CP, which vm is about to execute */
+	void executing(VirtualMachine vm) {
+		int addr = vm.CP - Machine.CB;
+		if (addr >= 0 && addr < counts.length) {
+			counts[addr]++;
+			run = addr == lastAddr + 1 ? Math.min(run + 1, MAX_SEQUENCE) : 1;
+			for (int k = 2; k <= run; k++)
+				sequences[k - 2][addr - k + 1]++;
+			lastAddr = addr;
+		}
+		instructions++;
+		if (--untilSample == 0) {
+			untilSample = interval;
+			sample(vm);
+		}
+	}
+
+	private void sample(VirtualMachine vm) {
+		int[] stack = vm.callStack();
+		int[] addrs = new int[stack.length / 2];
+		for (int i = 0; i < addrs.length; i++)
+			addrs[i] = stack[stack.length - 2 - 2 * i];
+		samples.computeIfAbsent(new Stack(addrs), s -> new long[1])[0]++;
+	}
+
+	/**
+	 * @return the times each sequence of 2 to MAX_SEQUENCE instructions was
+	 *         executed, by the operations in it, such as "LOAD[LB]; LOADL; ADD"
+	 */
+	Map<String, Long> sequences() {
+		Map<String, Long> bySequence = new HashMap<String, Long>();
+		for (int k = 2; k <= MAX_SEQUENCE; k++) {
+			for (int addr = 0; addr + k <= counts.length; addr++) {
+				if (sequences[k - 2][addr] == 0)
+					continue;
+				StringBuilder sequence = new StringBuilder();
+				for (int i = addr; i < addr + k; i++) {
+					if (i > addr)
+						sequence.append("; ");
+					sequence.append(operation(i));
+				}
+				bySequence.merge(sequence.toString(), sequences[k - 2][addr], Long::sum);
+			}
+		}
+		return bySequence;
+	}
+
+	/**
+	 * @return the operation of the instruction at addr, with the register it
+	 *         is relative to, or the primitive it calls
+	 */
+	private String operation(int addr) {
+		int word = code[addr * Machine.instrWords];
+		int op = Machine.opOf(word), r = Machine.rOf(word), d = code[addr * Machine.instrWords + 1];
+		if (op >= Machine.intToOp.length || r >= Machine.intToReg.length)
+			return "?";
+		Machine.Op operation = Machine.intToOp[op];
+		switch (operation) {
+		case CALL:
+			if (r == Machine.Reg.PB.ordinal())
+				return d >= 0 && d < Machine.intToPrim.length ? Machine.intToPrim[d].toString() : "?";
+			return operation.toString();
+		case LOAD:
+		case LOADA:
+		case STORE:
+		case LOAD2:
+		case INCR:
+			return operation + "[" + Machine.intToReg[r] + "]";
+		default:
+			return operation.toString();
+		}
+	}
+
+	private String name(int addr) {
+		return debug == null ? "@" + addr : debug.describe(addr);
+	}
+
+	private String method(int addr) {
+		DebugInfo.Method method = debug == null ? null : debug.method(addr);
+		return method == null ? "(no method)" : method.toString();
+	}
+
+	private int line(int addr) {
+		return debug == null ? 0 : debug.line(addr);
+	}
+
+	/**
+	 * Writes the call stack samples as folded stacks, one line per distinct
+	 * stack: the frames from the outermost in, separated by semicolons, then
+	 * the number of samples, as read by flamegraph.pl and similar tools
+	 */
+	void writeFolded(PrintStream out) {
+		Map<String, Long> folded = new TreeMap<String, Long>();
+		for (Map.Entry<Stack, long[]> sample : samples.entrySet()) {
+			StringBuilder stack = new StringBuilder();
+			for (int addr : sample.getKey().addrs) {
+				if (stack.length() > 0)
+					stack.append(';');
+				stack.append(name(addr));
+			}
+			folded.merge(stack.toString(), sample.getValue()[0], Long::sum);
+		}
+		for (Map.Entry<String, Long> stack : folded.entrySet())
+			out.println(stack.getKey() + " " + stack.getValue());
+	}
+
+	/**
+	 * Writes the instructions executed in each method, on each source line
+	 * and at each code address, most first
+	 * @param limit  the most lines to write in each table
+	 */
+	void writeFlat(PrintStream out, int limit) {
+		Map<String, long[]> byMethod = new TreeMap<String, long[]>();
+		Map<String, long[]> byLine = new TreeMap<String, long[]>();
+		List<Integer> addrs = new ArrayList<Integer>();
+		for (int addr = 0; addr < counts.length; addr++) {
+			if (counts[addr] == 0)
+				continue;
+			int line = line(Machine.CB + addr);
+			String method = method(Machine.CB + addr);
+			byMethod.computeIfAbsent(method, m -> new long[1])[0] += counts[addr];
+			byLine.computeIfAbsent(String.format("%-5s %s", line == 0 ? "?" : String.valueOf(line), method),
+					l -> new long[1])[0] += counts[addr];
+			addrs.add(addr);
+		}
+		addrs.sort((a, b) -> Long.compare(counts[b], counts[a]));
+
+		out.println("mJAM CPU profile: " + instructions + " instructions executed, "
+				+ samples.values().stream().mapToLong(s -> s[0]).sum() + " call stacks sampled every "
+				+ interval);
+		out.println("");
+		out.println("By method, most instructions first:");
+		out.println("instructions       %   method");
+		writeCounts(out, byMethod, limit);
+		out.println("");
+		out.println("By source line, most instructions first:");
+		out.println("instructions       %   line  method");
+		writeCounts(out, byLine, limit);
+		out.println("");
+		out.println("By code address, most instructions first:");
+		out.println("instructions       %   addr  line  method");
+		for (int addr : addrs.subList(0, Math.min(limit, addrs.size()))) {
+			int line = line(Machine.CB + addr);
+			out.println(String.format("%12d  %5.1f%%  %-5d %-5s %s", counts[addr],
+					100.0 * counts[addr] / Math.max(instructions, 1), Machine.CB + addr,
+					line == 0 ? "?" : String.valueOf(line), method(Machine.CB + addr)));
+		}
+		out.println("");
+		out.println("By instruction sequence, most executed first:");
+		out.println("   sequences       %   operations");
+		Map<String, long[]> bySequence = new HashMap<String, long[]>();
+		for (Map.Entry<String, Long> sequence : sequences().entrySet())
+			bySequence.put(sequence.getKey(), new long[] { sequence.getValue() });
+		writeCounts(out, bySequence, limit);
+	}
+
+	private void writeCounts(PrintStream out, Map<String, long[]> counts, int limit) {
+		List<Map.Entry<String, long[]>> sorted = new ArrayList<Map.Entry<String, long[]>>(counts.entrySet());
+		sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+		for (Map.Entry<String, long[]> count : sorted.subList(0, Math.min(limit, sorted.size())))
+			out.println(String.format("%12d  %5.1f%%  %s", count.getValue()[0],
+					100.0 * count.getValue()[0] / Math.max(instructions, 1), count.getKey()));
+	}
+}
@@ -0,0 +1,262 @@
+/**
+ * Debug symbols of an mJAM program
+ */
+package miniJava.mJAM;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ties the code of a program back to its miniJava source, as recorded by the
+ * compiler:
+ * <ul>
+ * <li>the class and name of the method at each code address, with the name,
+ *     type and LB offset of its parameters and locals and the code addresses
+ *     at which each of them is in scope, and</li>
+ * <li>the source line of the code at each address.</li>
+ * </ul>
+ * It follows the type map in an object file. Nothing in it is needed to run
+ * the program; profiles, stack traces and the debugger use it to name code
+ * and data.
+ */
+public final class DebugInfo {
+
+	/** first word of the debug symbols in an object file, after the type map */
+	public final static int MAGIC = 0x44425547; // "DBUG"
+
+	/** A parameter or local variable */
+	public final static class Local {
+		public final String name;
+		public final String typeName;
+		public final int offset;       // LB offset, negative for parameters
+		public final int from, to;     // code addresses [from, to) at which it is in scope
+
+		Local(String name, String typeName, int offset, int from, int to) {
+			this.name = name;
+			this.typeName = typeName;
+			this.offset = offset;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/** A method or constructor */
+	public final static class Method {
+		public final String className;
+		public final String name;
+		public final int start, end;   // code addresses [start, end) of the method
+		private final List<Local> locals = new ArrayList<Local>();
+
+		Method(String className, String name, int start, int end) {
+			this.className = className;
+			this.name = name;
+			this.start = start;
+			this.end = end;
+		}
+
+		public void addLocal(String name, String typeName, int offset, int from, int to) {
+			locals.add(new Local(name, typeName, offset, from, to));
+		}
+
+		/** @return the parameters and locals, in the order they were added */
+		public List<Local> getLocals() {
+			return java.util.Collections.unmodifiableList(locals);
+		}
+
+		/** @return the parameters and locals in scope when the code at addr runs */
+		public List<Local> localsAt(int addr) {
+			List<Local> inScope = new ArrayList<Local>();
+			for (Local local : locals) {
+				if (local.from <= addr && addr < local.to)
+					inScope.add(local);
+			}
+			return inScope;
+		}
+
+		public String toString() {
+			return className + "." + name;
+		}
+	}
+
+	// in increasing code address order, as the compiler emits them
+	private final List<Method> methods = new ArrayList<Method>();
+	// the code from lineAddrs[i] up to lineAddrs[i + 1] is from source line
+	// lines[i], 0 if unknown
+	private int lineCount = 0;
+	private int[] lineAddrs = new int[16], lines = new int[16];
+
+	// BUILDING, as the code is generated
+
+	/**
+	 * Adds a method whose code occupies [start, end); its parameters and
+	 * locals are added to the method returned
+	 */
+	public Method addMethod(String className, String name, int start, int end) {
+		if (!methods.isEmpty() && methods.get(methods.size() - 1).end > start)
+			throw new IllegalArgumentException("method out of order at " + start);
+		Method method = new Method(className, name, start, end);
+		methods.add(method);
+		return method;
+	}
+
+	/** Records that the code from addr on is from source line line */
+	public void addLine(int addr, int line) {
+		if (lineCount > 0 && lineAddrs[lineCount - 1] > addr)
+			throw new IllegalArgumentException("line out of order at " + addr);
+		if (lineCount > 0 && lineAddrs[lineCount - 1] == addr)
+			lineCount--;  // nothing was emitted for the previous line
+		if (lineCount > 0 && lines[lineCount - 1] == line)
+			return;
+		if (lineCount == lineAddrs.length) {
+			lineAddrs = Arrays.copyOf(lineAddrs, 2 * lineCount);
+			lines = Arrays.copyOf(lines, 2 * lineCount);
+		}
+		lineAddrs[lineCount] = addr;
+		lines[lineCount] = line;
+		lineCount++;
+	}
+
+	/**
+	 * Moves the code addresses in the symbols along with the code, as an
+	 * optimizer moves it: the instruction at addr to newAddr[addr]
+	 */
+	void relocate(int[] newAddr) {
+		List<Method> moved = new ArrayList<Method>();
+		for (Method method : methods) {
+			Method movedMethod = new Method(method.className, method.name, newAddr[method.start],
+					newAddr[method.end]);
+			for (Local local : method.locals)
+				movedMethod.addLocal(local.name, local.typeName, local.offset, newAddr[local.from],
+						newAddr[local.to]);
+			moved.add(movedMethod);
+		}
+		methods.clear();
+		methods.addAll(moved);
+		int[] oldAddrs = Arrays.copyOf(lineAddrs, lineCount), oldLines = Arrays.copyOf(lines, lineCount);
+		lineCount = 0;
+		for (int i = 0; i < oldAddrs.length; i++)
+			addLine(newAddr[oldAddrs[i]], oldLines[i]);
+	}
+
+	// LOOKUP
+
+	public List<Method> getMethods() {
+		return java.util.Collections.unmodifiableList(methods);
+	}
+
+	/** @return the method whose code includes addr, or null if there is none */
+	public Method method(int addr) {
+		int low = 0, high = methods.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Method method = methods.get(mid);
+			if (method.end <= addr)
+				low = mid + 1;
+			else if (method.start > addr)
+				high = mid - 1;
+			else
+				return method;
+		}
+		return null;
+	}
+
+	/** @return the source line of the code at addr, 0 if unknown */
+	public int line(int addr) {
+		int i = Arrays.binarySearch(lineAddrs, 0, lineCount, addr);
+		if (i < 0)
+			i = -i - 2;  // the entry before the insertion point
+		return i < 0 ? 0 : lines[i];
+	}
+
+	/**
+	 * @return the code at addr as Class.method:line, leaving out what is not
+	 *         known, or as @addr outside of any method
+	 */
+	public String describe(int addr) {
+		Method method = method(addr);
+		if (method == null)
+			return "@" + addr;
+		int line = line(addr);
+		return line == 0 ? method.toString() : method + ":" + line;
+	}
+
+	// OBJECT FILE FORMAT, following the type map; names are written once, in
+	// a table that the rest refers to by index
+
+	void write(DataOutputStream os) throws IOException {
+		Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+		for (Method method : methods) {
+			names.putIfAbsent(method.className, names.size());
+			names.putIfAbsent(method.name, names.size());
+			for (Local local : method.locals) {
+				names.putIfAbsent(local.name, names.size());
+				names.putIfAbsent(local.typeName, names.size());
+			}
+		}
+		os.writeInt(MAGIC);
+		os.writeInt(names.size());
+		for (String name : names.keySet())
+			os.writeUTF(name);
+		os.writeInt(methods.size());
+		for (Method method : methods) {
+			os.writeInt(names.get(method.className));
+			os.writeInt(names.get(method.name));
+			os.writeInt(method.start);
+			os.writeInt(method.end);
+			os.writeInt(method.locals.size());
+			for (Local local : method.locals) {
+				os.writeInt(names.get(local.name));
+				os.writeInt(names.get(local.typeName));
+				os.writeInt(local.offset);
+				os.writeInt(local.from);
+				os.writeInt(local.to);
+			}
+		}
+		os.writeInt(lineCount);
+		for (int i = 0; i < lineCount; i++) {
+			os.writeInt(lineAddrs[i]);
+			os.writeInt(lines[i]);
+		}
+	}
+
+	/**
+	 * Reads debug symbols written by write, starting with their MAGIC word
+	 * @throws IOException if the symbols are missing or malformed
+	 */
+	static DebugInfo read(DataInputStream is) throws IOException {
+		if (is.readInt() != MAGIC)
+			throw new IOException("no debug symbols");
+		DebugInfo debug = new DebugInfo();
+		String[] names = new String[checkCount(is.readInt())];
+		for (int i = 0; i < names.length; i++)
+			names[i] = is.readUTF();
+		for (int count = checkCount(is.readInt()); count > 0; count--) {
+			Method method = debug.addMethod(name(names, is.readInt()), name(names, is.readInt()),
+					is.readInt(), is.readInt());
+			for (int locals = checkCount(is.readInt()); locals > 0; locals--)
+				method.addLocal(name(names, is.readInt()), name(names, is.readInt()),
+						is.readInt(), is.readInt(), is.readInt());
+		}
+		for (int count = checkCount(is.readInt()); count > 0; count--)
+			debug.addLine(is.readInt(), is.readInt());
+		return debug;
+	}
+
+	private static String name(String[] names, int index) throws IOException {
+		if (index < 0 || index >= names.length)
+			throw new IOException("invalid name index " + index);
+		return names[index];
+	}
+
+	private static int checkCount(int count) throws IOException {
+		if (count < 0 || count > Machine.maxCodeSize)
+			throw new IOException("invalid debug symbol count " + count);
+		return count;
+	}
+}
@@ -0,0 +1,387 @@
+/**
+ * mJAM code store decoded once for fast interpretation
+ */
+package miniJava.mJAM;
+
+/**
+ * A program translated into a form the VirtualMachine can dispatch on
+ * directly: one int opcode per instruction (with the operand
+ * register folded into the opcode, or into d when the register is constant),
+ * primitives resolved to their own opcodes, shared with the ALU operations
+ * that compute the same, superinstructions split by their operation and
+ * register, and jump and call targets checked once here instead of after
+ * every instruction.
+ *
+ * The program is verified first. If it passes, stack space is checked once
+ * per call, too: each call carries in n the words its callee needs, its frame
+ * header plus the stack depth the Verifier worked out for it, and the
+ * instructions that push check nothing. If it does not, the instructions that
+ * push, and those that address the fields of OB, are decoded as SLOW instead,
+ * and are checked one at a time. A verified program uses OB only in methods
+ * called with CALLI, which checks that the instance is an object with the
+ * fields its method addresses.
+ *
+ * Instructions that are rare or that would fail are decoded as SLOW and are
+ * executed by VirtualMachine.interpretOneOperation, exactly as when stepping.
+ */
+final class DecodedProgram {
+
+	// decoded operations
+	final static int
+		SLOW = 0,       // execute through the general interpreter
+		END = 1,        // CP ran off the end of the code store
+		LOAD_ABS = 2, LOAD_LB = 3, LOAD_OB = 4, LOAD_ST = 5,
+		LOADA_ABS = 6, LOADA_LB = 7, LOADA_OB = 8, LOADA_ST = 9,
+		LOADI = 10, LOADL = 11,
+		STORE_ABS = 12, STORE_LB = 13, STORE_OB = 14, STORE_ST = 15,
+		STOREI = 16,
+		CALL = 17, CALLI = 18, RETURN = 19,
+		PUSH = 20, POP = 21,
+		JUMP = 22, JUMPI = 23, JUMPIF = 24,
+		PRIM = 25,      // any primitive without a decoded operation of its own
+		NOT = 26, AND = 27, OR = 28, NEG = 29,
+		ADD = 30, SUB = 31, MULT = 32, DIV = 33, MOD = 34,
+		LT = 35, LE = 36, GE = 37, GT = 38, EQ = 39, NE = 40,
+		ARRAYLEN = 41, ARRAYREF = 42, ARRAYUPD = 43, FIELDREF = 44, FIELDUPD = 45,
+		NEWOBJ = 46, NEWARR = 47,
+		// superinstructions
+		LOAD2_LB = 48, LOAD2_OB = 49,
+		INCR_ABS = 50, INCR_LB = 51, INCR_OB = 52,
+		ADD_L = 53, SUB_L = 54, MULT_L = 55,
+		LT_L = 56, LE_L = 57, GE_L = 58, GT_L = 59, EQ_L = 60, NE_L = 61,
+		JUMP_LT = 62, JUMP_LE = 63, JUMP_GE = 64, JUMP_GT = 65, JUMP_EQ = 66, JUMP_NE = 67,
+		LOADF = 68, STOREF = 69;
+
+	final int[] op;  // decoded operation, with op[size] == END
+	final int[] n;   // n field of the instruction, signed for superinstructions,
+	                 // and the stack space a call needs
+	final int[] d;   // d field, plus the register content when that is constant
+	final int[] field; // for CALLI, the largest field offset its callee
+	                   // addresses from OB, -1 if none
+	final int size;  // number of instructions (CT - CB)
+	int entrySpace;  // words the code from CB needs on the stack
+	String problem;  // why the program failed verification, null if it passed
+
+	private Verifier verifier; // while decoding
+
+	private DecodedProgram(int size) {
+		this.size = size;
+		op = new int[size + 1];
+		n = new int[size + 1];
+		d = new int[size + 1];
+		field = new int[size + 1];
+		op[size] = END;
+	}
+
+	/**
+	 * Decodes the instructions in code[CB..CT) of a packed code store
+	 * @param types  type map of the program, or null
+	 */
+	static DecodedProgram decode(int[] code, int CT, TypeMap types) {
+		DecodedProgram program = new DecodedProgram(CT - Machine.CB);
+		program.verifier = new Verifier(code, types);
+		program.problem = program.verifier.verify();
+		for (int addr = 0; addr < program.size; addr++) {
+			int word = code[(Machine.CB + addr) * Machine.instrWords];
+			program.n[addr] = Machine.nOf(word);
+			program.d[addr] = code[(Machine.CB + addr) * Machine.instrWords + 1];
+			program.op[addr] = program.decodeOne(Machine.opOf(word), Machine.rOf(word), addr);
+		}
+		if (program.problem == null)
+			program.entrySpace = program.verifier.space(Machine.CB);
+		else
+			program.checkUnverified();
+		program.verifier = null;
+		return program;
+	}
+
+	/**
+	 * @return the words a method needs on the stack above its frame header,
+	 *         0 if the program failed verification
+	 */
+	private int space(int entry) {
+		return problem == null ? verifier.space(entry) : 0;
+	}
+
+	/**
+	 * Falls back to checking every push and every field of OB, when the
+	 * program failed verification: the instructions that push or address OB
+	 * are decoded as SLOW, and calls check for their frame headers only
+	 */
+	private void checkUnverified() {
+		entrySpace = 0;
+		for (int addr = 0; addr < size; addr++) {
+			switch (op[addr]) {
+			case LOAD_ABS:
+			case LOAD_LB:
+			case LOAD_OB:
+			case LOAD_ST:
+			case LOADA_ABS:
+			case LOADA_LB:
+			case LOADA_OB:
+			case LOADA_ST:
+			case LOADL:
+			case PUSH:
+			case LOAD2_LB:
+			case LOAD2_OB:
+			case STORE_OB:
+			case INCR_OB:
+			case ADD_L:
+			case SUB_L:
+			case MULT_L:
+			case LT_L:
+			case LE_L:
+			case GE_L:
+			case GT_L:
+			case EQ_L:
+			case NE_L:
+				op[addr] = SLOW;
+				break;
+			case CALL:
+				n[addr] = 3;
+				break;
+			case CALLI:
+				n[addr] = 2;
+				break;
+			}
+		}
+	}
+
+	private int decodeOne(int opcode, int r, int addr) {
+		if (opcode >= Machine.intToOp.length || r >= Machine.intToReg.length)
+			return SLOW;
+		Machine.Reg reg = Machine.intToReg[r];
+		switch (Machine.intToOp[opcode]) {
+		case LOAD:
+			return withRegister(reg, addr, LOAD_ABS, LOAD_LB, LOAD_OB, LOAD_ST);
+		case LOADA:
+			return withRegister(reg, addr, LOADA_ABS, LOADA_LB, LOADA_OB, LOADA_ST);
+		case LOADI:
+			return LOADI;
+		case LOADL:
+			return LOADL;
+		case STORE:
+			return withRegister(reg, addr, STORE_ABS, STORE_LB, STORE_OB, STORE_ST);
+		case STOREI:
+			return STOREI;
+		case CALL:
+			if (reg == Machine.Reg.PB && d[addr] >= 0 && d[addr] < Machine.intToPrim.length)
+				return primitive(Machine.intToPrim[d[addr]]);
+			if (!codeTarget(reg, addr))
+				return SLOW;
+			n[addr] = 3 + space(d[addr]); // the frame header and the callee's stack
+			return CALL;
+		case CALLI:
+			if (!codeTarget(reg, addr))
+				return SLOW;
+			n[addr] = 2 + space(d[addr]); // the instance's slot becomes part of the header
+			field[addr] = problem == null ? verifier.instanceField(d[addr]) : -1;
+			return CALLI;
+		case RETURN:
+			return (n[addr] == 0 || n[addr] == 1) ? RETURN : SLOW;
+		case PUSH:
+			return d[addr] >= 0 ? PUSH : SLOW;
+		case POP:
+			return POP;
+		case JUMP:
+			return codeTarget(reg, addr) ? JUMP : SLOW;
+		case JUMPI:
+			return JUMPI;
+		case JUMPIF:
+			return codeTarget(reg, addr) ? JUMPIF : SLOW;
+		case NOT:
+			return NOT;
+		case AND:
+			return AND;
+		case OR:
+			return OR;
+		case NEG:
+			return NEG;
+		case ADD:
+			return ADD;
+		case SUB:
+			return SUB;
+		case MULT:
+			return MULT;
+		case DIV:
+			return DIV;
+		case MOD:
+			return MOD;
+		case LT:
+			return LT;
+		case LE:
+			return LE;
+		case GE:
+			return GE;
+		case GT:
+			return GT;
+		case EQ:
+			return EQ;
+		case NE:
+			return NE;
+		case LOAD2:
+			n[addr] = (short) n[addr];
+			return reg == Machine.Reg.LB ? LOAD2_LB : reg == Machine.Reg.OB ? LOAD2_OB : SLOW;
+		case INCR:
+			n[addr] = (short) n[addr];
+			return withRegister(reg, addr, INCR_ABS, INCR_LB, INCR_OB, SLOW);
+		case OPL:
+			return literalOperand(n[addr]);
+		case JUMPCMP:
+			return codeTarget(reg, addr) ? compareAndJump(n[addr]) : SLOW;
+		case LOADF:
+			return d[addr] >= 0 ? LOADF : SLOW;
+		case STOREF:
+			return d[addr] >= 0 ? STOREF : SLOW;
+		case LOADX:
+			return ARRAYREF;
+		case STOREX:
+			return ARRAYUPD;
+		default: // CALLD, HALT
+			return SLOW;
+		}
+	}
+
+	/** @return the decoded operation for OPL of the ALU operation op */
+	private static int literalOperand(int op) {
+		if (op >= Machine.intToOp.length)
+			return SLOW;
+		switch (Machine.intToOp[op]) {
+		case ADD:
+			return ADD_L;
+		case SUB:
+			return SUB_L;
+		case MULT:
+			return MULT_L;
+		case LT:
+			return LT_L;
+		case LE:
+			return LE_L;
+		case GE:
+			return GE_L;
+		case GT:
+			return GT_L;
+		case EQ:
+			return EQ_L;
+		case NE:
+			return NE_L;
+		default: // AND, OR, DIV, MOD, and anything invalid
+			return SLOW;
+		}
+	}
+
+	/** @return the decoded operation for JUMPCMP of the comparison op */
+	private static int compareAndJump(int op) {
+		if (op >= Machine.intToOp.length)
+			return SLOW;
+		switch (Machine.intToOp[op]) {
+		case LT:
+			return JUMP_LT;
+		case LE:
+			return JUMP_LE;
+		case GE:
+			return JUMP_GE;
+		case GT:
+			return JUMP_GT;
+		case EQ:
+			return JUMP_EQ;
+		case NE:
+			return JUMP_NE;
+		default:
+			return SLOW;
+		}
+	}
+
+	/**
+	 * Picks the decoded operation for a register-relative operand, folding a
+	 * constant register into d
+	 */
+	private int withRegister(Machine.Reg reg, int addr, int abs, int lb, int ob, int st) {
+		switch (reg) {
+		case LB:
+			return lb;
+		case OB:
+			return ob;
+		case ST:
+			return st;
+		case CB:
+			d[addr] += Machine.CB;
+			return abs;
+		case SB:
+			d[addr] += VirtualMachine.SB;
+			return abs;
+		case PB:
+			d[addr] += Machine.PB;
+			return abs;
+		case PT:
+			d[addr] += Machine.PT;
+			return abs;
+		case ZR:
+			return abs;
+		default: // registers that change while running: CT, CP, HB, HT
+			return SLOW;
+		}
+	}
+
+	/**
+	 * Resolves the target of a jump or call to an absolute code address,
+	 * @return false if the target is not a valid code address
+	 */
+	private boolean codeTarget(Machine.Reg reg, int addr) {
+		if (reg != Machine.Reg.CB)
+			return false;
+		d[addr] += Machine.CB;
+		return d[addr] >= Machine.CB && d[addr] < Machine.CB + size;
+	}
+
+	private static int primitive(Machine.Prim prim) {
+		switch (prim) {
+		case not:
+			return NOT;
+		case and:
+			return AND;
+		case or:
+			return OR;
+		case neg:
+			return NEG;
+		case add:
+			return ADD;
+		case sub:
+			return SUB;
+		case mult:
+			return MULT;
+		case div:
+			return DIV;
+		case mod:
+			return MOD;
+		case lt:
+			return LT;
+		case le:
+			return LE;
+		case ge:
+			return GE;
+		case gt:
+			return GT;
+		case eq:
+			return EQ;
+		case ne:
+			return NE;
+		case arraylen:
+			return ARRAYLEN;
+		case arrayref:
+			return ARRAYREF;
+		case arrayupd:
+			return ARRAYUPD;
+		case fieldref:
+			return FIELDREF;
+		case fieldupd:
+			return FIELDUPD;
+		case newobj:
+			return NEWOBJ;
+		case newarr:
+			return NEWARR;
+		default:
+			return PRIM;
+		}
+	}
+}
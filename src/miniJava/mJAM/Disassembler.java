@@ -27,6 +27,7 @@ public class Disassembler {
 	private FileWriter asmOut;
 	private boolean error = false;
 	private Map<Integer, String> addrToLabel;
+	private CodeStore code;
 
 	public Disassembler(String objectFileName) {
 		this.objectFileName = objectFileName;
@@ -61,6 +62,15 @@ public class Disassembler {
 		asmWrite(String.format("%-6s","(" + n + ")"));
 	}
 
+	/**
+	 * Writes the n-field of an instruction that names an ALU operation in the
+	 * form "(op)".
+	 * @param n   the ordinal of the operation.
+	 */
+	private void writeOperation(int n) {
+		asmWrite(String.format("%-6s", "(" + (n < Machine.intToOp.length ? Machine.intToOp[n].toString() : "?" + n) + ")"));
+	}
+
 	/**
 	 * Writes the d-field of an instruction.
 	 * @param d   the integer to write.
@@ -173,6 +183,58 @@ public class Disassembler {
 			writeN(instr.n);
 			break;
 
+		case NOT:
+		case AND:
+		case OR:
+		case NEG:
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case MOD:
+		case LT:
+		case LE:
+		case GE:
+		case GT:
+		case EQ:
+		case NE:
+			break;
+
+		case LOAD2:
+			blankN();
+			writeD(instr.d);
+			writeR('[', instr.r, ']');
+			asmWrite(" ");
+			writeD((short) instr.n);
+			writeR('[', instr.r, ']');
+			break;
+
+		case INCR:
+			writeN((short) instr.n);
+			writeD(instr.d);
+			writeR('[', instr.r, ']');
+			break;
+
+		case OPL:
+			writeOperation(instr.n);
+			writeD(instr.d);
+			break;
+
+		case JUMPCMP:
+			writeOperation(instr.n);
+			asmWrite(targetLabel);
+			break;
+
+		case LOADF:
+		case STOREF:
+			blankN();
+			writeD(instr.d);
+			break;
+
+		case LOADX:
+		case STOREX:
+			break;
+
 		default:
 			asmWrite("????  ");
 			writeN(instr.n);
@@ -198,8 +260,8 @@ public class Disassembler {
 
 		// collect all addresses that may be the target of a jump instruction
 		SortedSet<Integer> targets = new TreeSet<Integer>();
-		for (int addr = Machine.CB; addr < Machine.CT; addr++) {
-			Instruction inst = Machine.code[addr];
+		for (int addr = Machine.CB; addr < code.nextInstrAddr(); addr++) {
+			Instruction inst = code.getInstruction(addr);
 			Machine.Op op = Machine.intToOp[inst.op];
 			switch (op) {
 			case CALL:
@@ -214,6 +276,7 @@ public class Disassembler {
 				targets.add(inst.d);
 				break;
 			case JUMPIF:
+			case JUMPCMP:
 				// a jump of any sort creates a branch target
 				targets.add(inst.d);
 				break;
@@ -230,11 +293,12 @@ public class Disassembler {
 			addrToLabel.put(addr, label);
 		}
 
-		// disassemble each instruction
-		for (int addr = Machine.CB; addr < Machine.CT; addr++) {
+		// disassemble each instruction, widening the address column for large programs
+		String addrFormat = "%" + Math.max(3, Integer.toString(code.nextInstrAddr()).length()) + "d  ";
+		for (int addr = Machine.CB; addr < code.nextInstrAddr(); addr++) {
 			
 			// generate instruction address
-			asmWrite(String.format("%3d  ", addr));
+			asmWrite(String.format(addrFormat, addr));
 
 			// if this addr is a branch target, output label
 			if (addrToLabel.containsKey(addr))
@@ -243,7 +307,7 @@ public class Disassembler {
 				asmWrite("       ");
 
 			// instruction
-			writeInstruction(Machine.code[addr]);
+			writeInstruction(code.getInstruction(addr));
 
 			// newline 
 			asmWrite("\n");
@@ -282,7 +346,8 @@ public class Disassembler {
 		ObjectFile objectFile = new ObjectFile(objectFileName);
 
 		// read object file into code store
-		if (objectFile.read()) {
+		code = objectFile.read();
+		if (code == null) {
 			System.out.println("Disassembler: unable to read object file"
 					+ objectFileName);
 			return true;
@@ -0,0 +1,178 @@
+/**
+ * mJAM heap profiler
+ */
+package miniJava.mJAM;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the allocation site of every object and array a VirtualMachine
+ * allocates, and reports the allocated and live bytes per site and per type.
+ *
+ * The site of an instance is the code address of its newobj or newarr call,
+ * which the program's type map ties to a source line and type. The machine
+ * keeps the site of each instance in allocSites, at the address of its
+ * header, and the collector moves it along with the instance.
+ *
+ * Live means reachable from the roots when the snapshot is taken, whether or
+ * not the heap is garbage collected. Since little is live once a program
+ * stops, the live bytes are also sampled at every garbage collection, and the
+ * most found live at one collection is reported as the peak. Sizes are in
+ * bytes, 4 per mJAM word, headers included.
+ */
+final class HeapProfiler {
+
+	final static int BYTES_PER_WORD = 4;
+
+	private final TypeMap types;
+	// by code address of the allocation site
+	private final long[] allocations, words, peakWords;
+	// by type name, the peak live words of all sites of the type together
+	private final Map<String, Long> peakTypeWords = new LinkedHashMap<String, Long>();
+	private long peakTotalWords = 0;
+	private int samples = 0;
+
+	HeapProfiler(int codeSize, TypeMap types) {
+		this.types = types;
+		allocations = new long[codeSize];
+		words = new long[codeSize];
+		peakWords = new long[codeSize];
+	}
+
+	void allocated(int site, int size) {
+		allocations[site]++;
+		words[site] += size;
+	}
+
+	/**
+	 * Counts the live instances and words of each allocation site
+	 * @param reachable  the instances reachable from the roots, as found by
+	 *                   Collector.mark
+	 */
+	private void countLive(VirtualMachine vm, BitSet reachable, long[] live, long[] liveWords) {
+		for (int header = vm.HB; header < vm.HT; header += vm.data[header + 1] + 2) {
+			if (reachable.get(header + 2 - vm.HB)) {
+				live[vm.allocSites[header]]++;
+				liveWords[vm.allocSites[header]] += vm.data[header + 1] + 2;
+			}
+		}
+	}
+
+	/**
+	 * Updates the peak live words with the heap of vm as it is about to be
+	 * collected
+	 */
+	void sample(VirtualMachine vm, BitSet reachable) {
+		long[] live = new long[allocations.length], liveWords = new long[allocations.length];
+		countLive(vm, reachable, live, liveWords);
+		Map<String, Long> typeWords = new LinkedHashMap<String, Long>();
+		long totalWords = 0;
+		for (int addr = 0; addr < allocations.length; addr++) {
+			if (liveWords[addr] == 0)
+				continue;
+			peakWords[addr] = Math.max(peakWords[addr], liveWords[addr]);
+			typeWords.merge(typeName(addr), liveWords[addr], Long::sum);
+			totalWords += liveWords[addr];
+		}
+		for (Map.Entry<String, Long> type : typeWords.entrySet())
+			peakTypeWords.merge(type.getKey(), type.getValue(), Math::max);
+		peakTotalWords = Math.max(peakTotalWords, totalWords);
+		samples++;
+	}
+
+	private String typeName(int addr) {
+		TypeMap.Site site = types == null ? null : types.site(addr);
+		return site == null ? "?" : site.typeName;
+	}
+
+	// totals of one line of the report
+	private static class Usage {
+		final String name;
+		long allocations, words, live, liveWords, peakWords;
+
+		Usage(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the heap of vm, which must have been profiled by
+	 * this profiler since its data store was allocated
+	 */
+	void write(VirtualMachine vm, PrintStream out) {
+		long[] live = new long[allocations.length], liveWords = new long[allocations.length];
+		boolean walkable = !vm.rawHeapBlocks;
+		if (walkable)
+			countLive(vm, Collector.mark(vm), live, liveWords);
+
+		List<Usage> sites = new ArrayList<Usage>();
+		Map<String, Usage> byType = new LinkedHashMap<String, Usage>();
+		for (int addr = 0; addr < allocations.length; addr++) {
+			if (allocations[addr] == 0)
+				continue;
+			TypeMap.Site site = types == null ? null : types.site(addr);
+			Usage usage = new Usage(rightPad(6, String.valueOf(addr))
+					+ rightPad(6, site == null || site.line == 0 ? "?" : String.valueOf(site.line)) + typeName(addr));
+			Usage type = byType.computeIfAbsent(typeName(addr), Usage::new);
+			for (Usage u : new Usage[] { usage, type }) {
+				u.allocations += allocations[addr];
+				u.words += words[addr];
+				u.live += live[addr];
+				u.liveWords += liveWords[addr];
+			}
+			usage.peakWords = Math.max(peakWords[addr], liveWords[addr]);
+			sites.add(usage);
+		}
+		Usage total = new Usage("total");
+		for (Usage type : byType.values()) {
+			type.peakWords = Math.max(peakTypeWords.getOrDefault(type.name, 0L), type.liveWords);
+			total.allocations += type.allocations;
+			total.words += type.words;
+			total.live += type.live;
+			total.liveWords += type.liveWords;
+		}
+		total.peakWords = Math.max(peakTotalWords, total.liveWords);
+
+		out.println("mJAM heap profile, taken at instruction " + vm.CP + " with "
+				+ (vm.HT - vm.HB) * BYTES_PER_WORD + " bytes of heap in use");
+		if (!walkable)
+			out.println("(the program allocated raw blocks, so live sizes are unknown)");
+		out.println("Peak live bytes are the most live at once at any of the " + samples
+				+ " garbage collections, or when the program stopped.");
+		out.println("");
+		out.println("By allocation site, most live bytes first:");
+		write(out, "addr  line  type", sites, null);
+		out.println("");
+		out.println("By type, most live bytes first:");
+		write(out, "type", new ArrayList<Usage>(byType.values()), total);
+	}
+
+	/** Writes a table of usages, sorted, followed by total if it is not null */
+	private static void write(PrintStream out, String heading, List<Usage> usages, Usage total) {
+		usages.sort((a, b) -> a.liveWords != b.liveWords ? Long.compare(b.liveWords, a.liveWords)
+				: a.peakWords != b.peakWords ? Long.compare(b.peakWords, a.peakWords)
+				: Long.compare(b.words, a.words));
+		if (total != null)
+			usages.add(total);
+		int width = heading.length();
+		for (Usage usage : usages)
+			width = Math.max(width, usage.name.length());
+		out.println(rightPad(width + 2, heading) + "   allocated        bytes        live   live bytes   peak live bytes");
+		for (Usage usage : usages)
+			out.println(String.format("%s%12d %12d %11d %12d %17d", rightPad(width + 2, usage.name),
+					usage.allocations, usage.words * BYTES_PER_WORD, usage.live, usage.liveWords * BYTES_PER_WORD,
+					usage.peakWords * BYTES_PER_WORD));
+	}
+
+	private static String rightPad(int len, String s) {
+		StringBuilder padded = new StringBuilder(s);
+		while (padded.length() < len)
+			padded.append(' ');
+		return padded.toString();
+	}
+}
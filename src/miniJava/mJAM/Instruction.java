@@ -1,5 +1,6 @@
 /**
- * mJAM instruction format
+ * mJAM instruction format, unpacked.  The code store itself keeps
+ * instructions packed into an int[] (see CodeStore)
  * @author prins
  * @version COMP 520 V2.3
  */
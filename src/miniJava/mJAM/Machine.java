@@ -26,10 +26,93 @@ public final class Machine {
 	    JUMP,
 	    JUMPI,
 	    JUMPIF,
-	    HALT;
+	    HALT,
+	    // arithmetic, logic and comparison of the values on top of the stack,
+	    // computed as by the primitive of the same name
+	    NOT,
+	    AND,
+	    OR,
+	    NEG,
+	    ADD,
+	    SUB,
+	    MULT,
+	    DIV,
+	    MOD,
+	    LT,
+	    LE,
+	    GE,
+	    GT,
+	    EQ,
+	    NE,
+	    // superinstructions, each doing the work of the sequence shown, into
+	    // which the peephole optimizer fuses the code generated; n is signed
+	    LOAD2,   // LOAD d[r]; LOAD n[r]
+	    INCR,    // LOAD d[r]; LOADL n; ADD; STORE d[r]
+	    OPL,     // LOADL d; the ALU operation whose ordinal is n
+	    JUMPCMP, // the comparison whose ordinal is n; JUMPIF (1) d[r]
+	    // field and array element access, checked as by the primitives
+	    LOADF,   // ..., obj addr a ==> ..., value of field d of a
+	    STOREF,  // ..., value v, obj addr a ==> ... and a.d := v
+	    LOADX,   // as CALL arrayref
+	    STOREX;  // as CALL arrayupd
 	}
 	public static Op [] intToOp = Op.values();
 
+	/**
+	 * @return the ALU operation that computes the same as primitive prim, or
+	 *         null if there is none
+	 */
+	public static Op aluOp(Prim prim) {
+		switch (prim) {
+		case not:
+			return Op.NOT;
+		case and:
+			return Op.AND;
+		case or:
+			return Op.OR;
+		case neg:
+			return Op.NEG;
+		case add:
+			return Op.ADD;
+		case sub:
+			return Op.SUB;
+		case mult:
+			return Op.MULT;
+		case div:
+			return Op.DIV;
+		case mod:
+			return Op.MOD;
+		case lt:
+			return Op.LT;
+		case le:
+			return Op.LE;
+		case ge:
+			return Op.GE;
+		case gt:
+			return Op.GT;
+		case eq:
+			return Op.EQ;
+		case ne:
+			return Op.NE;
+		default:
+			return null;
+		}
+	}
+
+
+	/**
+	 * @return true if op is an ALU operation on the two values on top of the
+	 *         stack, as OPL takes
+	 */
+	public static boolean isBinaryAluOp(int op) {
+		return op >= Op.AND.ordinal() && op <= Op.NE.ordinal() && op != Op.NEG.ordinal();
+	}
+
+	/** @return true if op is a comparison, as JUMPCMP takes */
+	public static boolean isComparison(int op) {
+		return op >= Op.LT.ordinal() && op <= Op.NE.ordinal();
+	}
+
 
 	/**
 	 * mJAM registers
@@ -103,120 +186,42 @@ public final class Machine {
   
   // CODE STORE REGISTERS
   public final static int CB = 0; // start of code space
-  public final static int PB = 1024; // size of code space reserved for instructions
+  public final static int PB = 1 << 30; // primitives live in their own range, far above any code address
   public final static int PT = PB + Prim.values().length;  // code space reserved for primitives
+  // code segment may grow up to the primitives, or as far as one int[] can hold
+  // its packed instructions, whichever is less
+  public final static int maxCodeSize = Math.min(PB - CB, (Integer.MAX_VALUE - 8) / Machine.instrWords);
 
-  // CODE STORE
-  public static Instruction[] code = new Instruction[PB];
-  public static int CT = CB;
-  
-  public static void initCodeGen() {
-	  CT = CB;
-  }
-  
- /**
-   * Places an instruction, with the given fields, into the next position in the code store
-   * @param op - operation
-   * @param n - length 
-   * @param r - register
-   * @param d - displacement
-   */
-public static void emit(Op op, int n, Reg r, Prim d) {
-	  emit(op.ordinal(), n, r.ordinal(), d.ordinal());
-  }
+  // CODE STORE (see CodeStore)
+  // instructions are packed two words each: code[2a] holds op | r << 8 | n << 16
+  // and code[2a + 1] holds d for the instruction at address a
+  public final static int instrWords = 2;
+  public final static int initialCodeSize = 1024;
 
-/**
- * emit operation with single literal argument d (n,r not used).  These are
- * operations like LOADL 44, PUSH 3, and CALLD 1
- */
-public static void emit(Op op, int d) {
-	  emit(op.ordinal(), 0, 0, d);
-}
-  
-  /**
-   * emit "call primitive operation" (operation built-in to mJAM).  This 
-   * generates  CALL primitiveop[PB]
-   */
-  public static void emit(Prim d) {
-	  emit(Op.CALL.ordinal(), 0, Machine.Reg.PB.ordinal(), d.ordinal());
+  public static int pack(int op, int n, int r) {
+	  return (op & 0xFF) | ((r & 0xFF) << 8) | (n << 16);
   }
-  
-  /**
-   * emit operations without arguments.  These are operations like 
-   * LOADI and STOREI
-   */
-  public static void emit(Op op) {
-	  emit(op, 0, 0, 0);
-  }
-  
-  /**
-   * emit operation with register r and integer displacement.  These are
-   * operations like JUMP 25[CB] and LOAD 6[LB]
-   */
-  public static void emit(Op op, Reg r, int d) {
-	  emit(op.ordinal(), 0, r.ordinal(), d);
-  }
-  
-  /**
-   * emit operation with n field, and register r and integer displacement.  These are
-   * operations like JUMPIF (1) 25[CB].  In the assembly code the value of n is shown 
-   * in parens.
-   */
-  public static void emit(Op op, int n, Reg r, int d) {
-	  emit(op.ordinal(), n, r.ordinal(), d);
+
+  public static int opOf(int word) {
+	  return word & 0xFF;
   }
-  
-  /**
-   * emit operation with integer n, r, d.  These are operations
-   * like RETURN (1) 3  and HALT (4) 0.  For RETURN the value
-   * of d is the number of caller args to pop off the callers 
-   * stack and n is the number of values to return at caller stack
-   * top.   n must be 0 or 1.
-   */
-  public static void emit(Op op, int n, int r, int d) {
-	  emit(op.ordinal(), n, r, d);
+
+  public static int rOf(int word) {
+	  return (word >>> 8) & 0xFF;
   }
-  
-  /**
-   * helper operation for emit using integer values
-   */
-private static void emit (int op, int n, int r, int d) {
-    if (n > 255) {
-        System.out.println("length of operand can't exceed 255 words");
-        n = 255; // to allow code generation to continue
-    }
-    if (CT >= Machine.PB)
-        System.out.println("mJAM: code segment capacity exceeded");
-    
-    Instruction nextInstr = new Instruction(op, n, r, d);
-        Machine.code[CT] = nextInstr;
-        CT = CT + 1;
+
+  public static int nOf(int word) {
+	  return word >>> 16;
   }
 
-/**
- * @return address (relative to CB) of next instruction to be generated
- */
-public static int nextInstrAddr() {
-	return CT;
-}
+  // n of a superinstruction, which is a signed 16-bit value
+  public static int signedNOf(int word) {
+	  return word >> 16;
+  }
 
-/**
- * Update the displacement component of the (JUMP or CALL) instruction at addr
- * @param addr
- * @param displacement
- */
-public static void patch(int addr, int displacement) {
-	if (addr < 0 || addr >= CT) {
-		System.out.println("patch:  address of instruction to be patched is out of range");
-		return;
-	}
-	if (displacement < 0 || displacement > CT) {
-		System.out.println("patch:  target address of patch is out of range");
-		return;
-	}
-	Machine.code[addr].d = displacement;
-	return;
-}
+  public static boolean fitsSignedN(int value) {
+	  return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+  }
 
 // DATA REPRESENTATION
 
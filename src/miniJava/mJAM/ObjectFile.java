@@ -5,66 +5,350 @@
  */
 package miniJava.mJAM;
 
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.FileOutputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
 
+/**
+ * An object file is, in version 2 of the format:
+ * <pre>
+ *   int MAGIC, int VERSION, int number of sections
+ *   each section: int tag, int length in bytes, its bytes
+ *   int CRC-32 of everything before it
+ * </pre>
+ * with big-endian ints. The sections are the code (tag CODE), the type map
+ * (tag TypeMap.MAGIC) and the debug symbols (tag DebugInfo.MAGIC), in that
+ * order; readers skip sections they do not know.
+ *
+ * The code section is the number of instructions followed by each
+ * instruction packed into as few bytes as it needs:
+ * <pre>
+ *   byte op
+ *   byte r in the high 4 bits, n in the low 4 bits
+ *   if r is 15, a byte holding r
+ *   if n is 15, n as a varint
+ *   d as a zig-zag varint
+ * </pre>
+ * where a varint is 7 bits per byte, low bits first, with the top bit set on
+ * all but the last byte. Most instructions take 3 or 4 bytes.
+ *
+ * The file is mapped into memory rather than read, and the code is unpacked
+ * straight from the mapping.
+ *
+ * Version 3 code may use the ALU operations, NOT to NE in Machine.Op, where
+ * version 2 code calls the primitives of the same names; an interpreter that
+ * predates them rejects the file by its version. Version 4 code may also use
+ * the superinstructions, LOAD2 to JUMPCMP, whose n is a signed 16-bit value
+ * written as its unsigned bits, and version 5 code the field and array
+ * element operations, LOADF to STOREX. Since version 6 the type map records
+ * the stack depth of each method.
+ *
+ * Files written by earlier compilers are read as well: version 1 starts with
+ * MAGIC_V1 and the number of instructions, followed by 16 bytes per
+ * instruction and the optional type map and debug symbols; version 0 is the
+ * instructions alone.
+ */
 public class ObjectFile {
-	
+
+	/** first word of an object file, followed by VERSION */
+	public final static int MAGIC = 0x6D4A4F42; // "mJOB"
+	public final static int VERSION = 6;
+	/** first word of a version 1 object file, followed by the number of instructions */
+	public final static int MAGIC_V1 = 0x6D4A414D; // "mJAM"
+	/** tag of the code section */
+	public final static int CODE = 0x434F4445; // "CODE"
+
 	String objectFileName;
 
+	// the contents, once read; code is null once handed over
+	private boolean loaded = false, readable = false;
+	private int[] code;
+	private TypeMap types;
+	private DebugInfo debug;
+
 	public ObjectFile(String objectFileName) {
 		super();
 		this.objectFileName = objectFileName;
 	}
-	
+
 	/**
-	 * Write mJAM code in code store into a binary object file
-	 * @param output  object file
+	 * Write mJAM code in code store into a binary object file, followed by
+	 * the type map and then the debug symbols of the program if it has them
+	 * @param code  code store holding the program
 	 * @return true if write fails
 	 */
-	public boolean write(){
+	public boolean write(CodeStore code){
 		boolean failed = false;
 		try {
-			FileOutputStream objectFile = new FileOutputStream(objectFileName);
-			DataOutputStream is = new DataOutputStream(objectFile);
-			for (int i = Machine.CB; i < Machine.CT; i++ ){
-				Instruction inst = Machine.code[i];
-				is.writeInt(inst.op);
-				is.writeInt(inst.n);
-				is.writeInt(inst.r);
-				is.writeInt(inst.d);
+			List<Integer> tags = new ArrayList<Integer>();
+			List<byte[]> sections = new ArrayList<byte[]>();
+			tags.add(CODE);
+			sections.add(codeSection(code));
+			if (code.getTypes() != null) {
+				ByteArrayOutputStream section = new ByteArrayOutputStream();
+				code.getTypes().write(new DataOutputStream(section));
+				tags.add(TypeMap.MAGIC);
+				sections.add(section.toByteArray());
+			}
+			if (code.getDebugInfo() != null) {
+				ByteArrayOutputStream section = new ByteArrayOutputStream();
+				code.getDebugInfo().write(new DataOutputStream(section));
+				tags.add(DebugInfo.MAGIC);
+				sections.add(section.toByteArray());
+			}
+
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			DataOutputStream os = new DataOutputStream(file);
+			os.writeInt(MAGIC);
+			os.writeInt(VERSION);
+			os.writeInt(sections.size());
+			for (int i = 0; i < sections.size(); i++) {
+				os.writeInt(tags.get(i));
+				os.writeInt(sections.get(i).length);
+				os.write(sections.get(i));
 			}
-			objectFile.close();
+			CRC32 crc = new CRC32();
+			crc.update(file.toByteArray());
+			os.writeInt((int) crc.getValue());
+			os.flush();
+			Files.write(Paths.get(objectFileName), file.toByteArray());
 		}
 		catch (Exception e) {failed = true;}
 		return failed;
 	}
 
+	private static byte[] codeSection(CodeStore code) throws IOException {
+		ByteArrayOutputStream section = new ByteArrayOutputStream();
+		DataOutputStream os = new DataOutputStream(section);
+		os.writeInt(code.nextInstrAddr() - Machine.CB);
+		for (int i = Machine.CB; i < code.nextInstrAddr(); i++) {
+			Instruction inst = code.getInstruction(i);
+			os.writeByte(inst.op);
+			os.writeByte((Math.min(inst.r, 15) << 4) | Math.min(inst.n, 15));
+			if (inst.r >= 15)
+				os.writeByte(inst.r);
+			if (inst.n >= 15)
+				writeVarint(os, inst.n);
+			writeVarint(os, (inst.d << 1) ^ (inst.d >> 31));
+		}
+		os.flush();
+		return section.toByteArray();
+	}
+
+	private static void writeVarint(DataOutputStream os, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			os.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		os.writeByte(value);
+	}
+
+	private static int readVarint(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new IOException("invalid varint");
+	}
+
 	/**
-	 * Read binary object file into code store, setting CT 
-	 * @return true if object code read fails
+	 * Read binary object file into a code store, setting CT
+	 * @return the code store, or null if object code read fails
 	 */
-	public boolean read() {
-		boolean failed = false;
-		try {
-			FileInputStream objectFile = new FileInputStream(objectFileName);
-			DataInputStream is = new DataInputStream(objectFile);
-			
-			Machine.CT = Machine.CB;
-			while (is.available() > 0 && Machine.CT < Machine.PB){
-				Instruction inst = new Instruction();
-				inst.op = is.readInt();
-				inst.n = is.readInt();
-				inst.r = is.readInt();
-				inst.d = is.readInt();
-				Machine.code[Machine.CT++] = inst;
+	public CodeStore read() {
+		int[] instructions = takeCode();
+		return instructions == null ? null : new CodeStore(instructions, types, debug);
+	}
+
+	/**
+	 * Read the type map of the program in the object file
+	 * @return the type map, or null if the file has none or it can not be read
+	 */
+	public TypeMap readTypes() {
+		return load() ? types : null;
+	}
+
+	/**
+	 * Read the debug symbols of the program in the object file
+	 * @return the debug symbols, or null if the file has none or they can not
+	 *         be read
+	 */
+	public DebugInfo readDebugInfo() {
+		return load() ? debug : null;
+	}
+
+	/**
+	 * Read binary object file into packed instructions
+	 * @return the instructions packed as in CodeStore, exactly one per
+	 *         instruction in the file, or null if object code read fails;
+	 *         the caller may keep them, no copy is made
+	 */
+	public int[] readCode() {
+		return takeCode();
+	}
+
+	/**
+	 * Hands over the instructions read, reading the file again if an earlier
+	 * call has taken them
+	 * @return the instructions, or null if object code read fails
+	 */
+	private int[] takeCode() {
+		if (load() && code == null) {
+			loaded = false;
+			load();
+		}
+		int[] taken = code;
+		code = null;
+		return taken;
+	}
+
+	/**
+	 * Reads the whole object file the first time it is called
+	 * @return false if the object code can not be read
+	 */
+	private boolean load() {
+		if (!loaded) {
+			loaded = true;
+			readable = false;
+			try (FileChannel channel = FileChannel.open(Paths.get(objectFileName), StandardOpenOption.READ)) {
+				ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				int first = file.remaining() >= 4 ? file.getInt(0) : 0;
+				if (first == MAGIC)
+					loadSections(file);
+				else if (first == MAGIC_V1)
+					loadVersion1(file);
+				else
+					loadVersion0(file);
+				readable = true;
+			} catch (Exception e) {
+				code = null;
+				types = null;
+				debug = null;
 			}
-			objectFile.close();
-		} catch (Exception e) {
-			failed = true;
-		}	
-		return failed;
+		}
+		return readable;
+	}
+
+	private void loadSections(ByteBuffer file) throws IOException {
+		if (file.remaining() < 16)
+			throw new IOException("truncated object file");
+		CRC32 crc = new CRC32();
+		ByteBuffer checked = file.duplicate();
+		checked.limit(file.limit() - 4);
+		crc.update(checked);
+		if ((int) crc.getValue() != file.getInt(file.limit() - 4))
+			throw new IOException("object file checksum mismatch");
+		file.limit(file.limit() - 4);
+
+		file.getInt(); // MAGIC
+		int version = file.getInt();
+		if (version < 2 || version > VERSION)
+			throw new IOException("unsupported object file version " + version);
+		for (int sections = file.getInt(); sections > 0; sections--) {
+			int tag = file.getInt(), length = file.getInt();
+			if (length < 0 || length > file.remaining())
+				throw new IOException("invalid section length " + length);
+			ByteBuffer section = file.slice();
+			section.limit(length);
+			file.position(file.position() + length);
+			if (tag == CODE)
+				code = readCodeSection(section);
+			else if (tag == TypeMap.MAGIC)
+				types = TypeMap.read(stream(section), version >= 6);
+			else if (tag == DebugInfo.MAGIC)
+				debug = DebugInfo.read(stream(section));
+		}
+		if (code == null)
+			throw new IOException("no code section");
+	}
+
+	private static int[] readCodeSection(ByteBuffer section) throws IOException {
+		// every instruction takes at least 3 bytes: op, r and n, and d
+		int size = checkSize(section.getInt(), section.remaining() / 3);
+		int[] code = new int[size * Machine.instrWords];
+		for (int addr = 0; addr < size; addr++) {
+			int op = section.get() & 0xFF;
+			int rn = section.get() & 0xFF;
+			int r = rn >>> 4, n = rn & 0xF;
+			if (r == 15)
+				r = section.get() & 0xFF;
+			if (n == 15)
+				n = readVarint(section);
+			int d = readVarint(section);
+			code[addr * Machine.instrWords] = Machine.pack(op, n, r);
+			code[addr * Machine.instrWords + 1] = (d >>> 1) ^ -(d & 1);
+		}
+		return code;
+	}
+
+	private void loadVersion1(ByteBuffer file) throws IOException {
+		file.getInt(); // MAGIC_V1
+		int size = checkSize(file.getInt(), file.remaining() / 16);
+		code = new int[size * Machine.instrWords];
+		for (int addr = 0; addr < size; addr++)
+			readInstruction(file, file.getInt(), code, addr);
+		// the type map and debug symbols are optional
+		DataInputStream is = stream(file);
+		try {
+			if (file.hasRemaining())
+				types = TypeMap.read(is, false);
+			if (is.available() > 0)
+				debug = DebugInfo.read(is);
+		} catch (IOException e) {
+			types = null;
+			debug = null;
+		}
+	}
+
+	private void loadVersion0(ByteBuffer file) throws IOException {
+		// the instructions alone, as written by older compilers
+		int size = file.remaining() / 16; // op, n, r and d of each instruction
+		if (size == 0)
+			throw new IOException("empty object file");
+		size = checkSize(size, size);
+		code = new int[size * Machine.instrWords];
+		for (int addr = 0; addr < size; addr++)
+			readInstruction(file, file.getInt(), code, addr);
+	}
+
+	/** @return a stream of a copy of the rest of buffer, which may not be backed by an array */
+	private static DataInputStream stream(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * @param present  the most instructions the rest of the file can hold, so
+	 *                 that a corrupt size is caught before the code is allocated
+	 */
+	private static int checkSize(int size, int present) throws IOException {
+		if (size < 0 || size > Machine.maxCodeSize || size > present)
+			throw new IOException("invalid code size " + size);
+		return size;
+	}
+
+	/**
+	 * Reads the n, r and d fields of an instruction and packs it into code at addr
+	 */
+	private static void readInstruction(ByteBuffer file, int op, int[] code, int addr) {
+		int n = file.getInt();
+		int r = file.getInt();
+		int d = file.getInt();
+		code[addr * Machine.instrWords] = Machine.pack(op, n, r);
+		code[addr * Machine.instrWords + 1] = d;
 	}
 }
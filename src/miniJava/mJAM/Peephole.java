@@ -0,0 +1,365 @@
+/**
+ * mJAM peephole optimizer
+ */
+package miniJava.mJAM;
+
+import miniJava.mJAM.Machine.Op;
+import miniJava.mJAM.Machine.Reg;
+
+/**
+ * Rewrites short runs of generated code into shorter code that does the same:
+ * <ul>
+ * <li>LOADA r d followed by LOADI or STOREI becomes LOAD r d or STORE r d,
+ *     for r one of SB, LB and OB,</li>
+ * <li>a value pushed only to be popped again, such as the instance through
+ *     which a static field is reached, is not pushed at all,</li>
+ * <li>POP 0, jumps to the next instruction and conditional jumps on a
+ *     literal are dropped or made unconditional,</li>
+ * <li>jumps to jumps go straight to where the last one goes, and</li>
+ * <li>code that control can not reach, such as a jump after a return, is
+ *     dropped.</li>
+ * </ul>
+ * Then the sequences that run most often, as counted over the test programs
+ * by BatchDriver --sequences, are fused into superinstructions: LOAD2 for
+ * two loads relative to the same register, INCR for adding a literal to a
+ * variable, OPL for an ALU operation with a literal operand and JUMPCMP for
+ * a comparison followed by a conditional jump.
+ * The instructions left are moved up over the ones dropped, and the code
+ * addresses in jumps and calls, the type map and the debug symbols move with
+ * them. An instruction that is jumped to or called is never merged into the
+ * one before it.
+ *
+ * The code is left alone if it finds code addresses at run time, through
+ * CALLD, JUMPI or LOADA of CB, as the optimizer could not move those.
+ */
+public final class Peephole {
+
+	private final static int LOAD = Op.LOAD.ordinal(), LOADA = Op.LOADA.ordinal(),
+			LOADI = Op.LOADI.ordinal(), LOADL = Op.LOADL.ordinal(), STORE = Op.STORE.ordinal(),
+			STOREI = Op.STOREI.ordinal(), CALL = Op.CALL.ordinal(), CALLI = Op.CALLI.ordinal(),
+			CALLD = Op.CALLD.ordinal(), RETURN = Op.RETURN.ordinal(), POP = Op.POP.ordinal(),
+			JUMP = Op.JUMP.ordinal(), JUMPI = Op.JUMPI.ordinal(), JUMPIF = Op.JUMPIF.ordinal(),
+			HALT = Op.HALT.ordinal(), ADD = Op.ADD.ordinal(), LOAD2 = Op.LOAD2.ordinal(),
+			INCR = Op.INCR.ordinal(), OPL = Op.OPL.ordinal(), JUMPCMP = Op.JUMPCMP.ordinal();
+	private final static int CB = Reg.CB.ordinal(), PB = Reg.PB.ordinal(), SB = Reg.SB.ordinal(),
+			LB = Reg.LB.ordinal(), OB = Reg.OB.ordinal();
+
+	private final TypeMap types;
+	private final DebugInfo debug;
+	// the instructions, unpacked, in [0, size)
+	private int size;
+	private final int[] op, n, r, d;
+	// by original code address, where the instruction is now; removed
+	// instructions are at the address of the next one left
+	private final int[] newAddr;
+	// by code address, the instructions control can reach other than by
+	// falling through, and those removed by this round of rewriting
+	private boolean[] target, removed;
+
+	private Peephole(CodeStore code) {
+		types = code.getTypes();
+		debug = code.getDebugInfo();
+		int[] packed = code.toArray();
+		size = packed.length / Machine.instrWords;
+		op = new int[size];
+		n = new int[size];
+		r = new int[size];
+		d = new int[size];
+		for (int addr = 0; addr < size; addr++) {
+			int word = packed[addr * Machine.instrWords];
+			op[addr] = Machine.opOf(word);
+			n[addr] = Machine.nOf(word);
+			r[addr] = Machine.rOf(word);
+			d[addr] = packed[addr * Machine.instrWords + 1];
+		}
+		newAddr = new int[size + 1];
+		for (int addr = 0; addr <= size; addr++)
+			newAddr[addr] = addr;
+	}
+
+	/**
+	 * Optimizes the program in code, which must start at CB, and fuses it
+	 * into superinstructions
+	 * @return the number of instructions removed
+	 */
+	public static int optimize(CodeStore code) {
+		return optimize(code, true);
+	}
+
+	/**
+	 * Optimizes the program in code, which must start at CB
+	 * @param superinstructions  whether to fuse sequences into superinstructions
+	 * @return the number of instructions removed
+	 */
+	public static int optimize(CodeStore code, boolean superinstructions) {
+		Peephole peephole = new Peephole(code);
+		if (!peephole.relocatable())
+			return 0;
+		int before = peephole.size;
+		while (peephole.rewrite())
+			peephole.compact();
+		if (superinstructions && peephole.fuse())
+			peephole.compact();
+		if (peephole.size == before)
+			return 0;
+		code.replaceCode(peephole.pack());
+		if (peephole.types != null)
+			peephole.types.relocate(peephole.newAddr);
+		if (peephole.debug != null)
+			peephole.debug.relocate(peephole.newAddr);
+		return before - peephole.size;
+	}
+
+	/** @return false if the code holds code addresses the optimizer can not see */
+	private boolean relocatable() {
+		for (int addr = 0; addr < size; addr++) {
+			if (op[addr] >= Machine.intToOp.length || op[addr] == CALLD || op[addr] == JUMPI
+					|| (op[addr] == LOADA && r[addr] == CB))
+				return false;
+			boolean jump = op[addr] == JUMP || op[addr] == JUMPIF || op[addr] == JUMPCMP || op[addr] == CALLI;
+			if ((jump && r[addr] != CB) || (op[addr] == CALL && r[addr] != CB && r[addr] != PB))
+				return false;
+			if (isCodeAddress(addr) && (d[addr] < 0 || d[addr] >= size))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isCodeAddress(int addr) {
+		return (op[addr] == JUMP || op[addr] == JUMPIF || op[addr] == JUMPCMP || op[addr] == CALL
+				|| op[addr] == CALLI) && r[addr] == CB;
+	}
+
+	private void findTargets() {
+		target = new boolean[size];
+		if (size > 0)
+			target[0] = true;
+		for (int addr = 0; addr < size; addr++) {
+			if (isCodeAddress(addr))
+				target[d[addr]] = true;
+		}
+		// methods that are never called still keep their first instruction
+		if (types != null) {
+			for (TypeMap.Frame frame : types.getFrames())
+				markTarget(frame.start);
+		}
+		if (debug != null) {
+			for (DebugInfo.Method method : debug.getMethods())
+				markTarget(method.start);
+		}
+	}
+
+	private void markTarget(int originalAddr) {
+		if (originalAddr >= 0 && originalAddr < newAddr.length && newAddr[originalAddr] < size)
+			target[newAddr[originalAddr]] = true;
+	}
+
+	/**
+	 * Makes one pass of rewrites over the code, marking the instructions to
+	 * remove
+	 * @return true if anything changed
+	 */
+	private boolean rewrite() {
+		findTargets();
+		removed = new boolean[size];
+		boolean changed = false;
+		for (int addr = 0; addr < size; addr++) {
+			if (!removed[addr])
+				changed |= rewrite(addr);
+		}
+		return changed;
+	}
+
+	/** Rewrites the code starting at addr @return true if anything changed */
+	private boolean rewrite(int addr) {
+		int next = addr + 1;
+		// the instruction at next can be merged into the one at addr
+		boolean paired = next < size && !target[next];
+
+		if (paired && op[addr] == LOADA && isFrameRegister(r[addr]) && (op[next] == LOADI || op[next] == STOREI)) {
+			op[addr] = op[next] == LOADI ? LOAD : STORE;
+			removed[next] = true;
+			return true;
+		}
+		if (paired && isPurePush(addr) && op[next] == POP && n[next] == 0 && d[next] > 0) {
+			removed[addr] = true;
+			if (--d[next] == 0)
+				removed[next] = true;
+			return true;
+		}
+		if (paired && op[addr] == LOADL && op[next] == JUMPIF) {
+			if (d[addr] == n[next]) {
+				set(addr, JUMP, 0, CB, d[next]);
+				removed[next] = true;
+			} else {
+				removed[addr] = removed[next] = true;
+			}
+			return true;
+		}
+		if (op[addr] == POP && n[addr] == 0 && d[addr] == 0) {
+			removed[addr] = true;
+			return true;
+		}
+		if ((op[addr] == JUMP || op[addr] == JUMPIF) && d[addr] == next) {
+			if (op[addr] == JUMP)
+				removed[addr] = true;
+			else
+				set(addr, POP, 0, 0, 1);
+			return true;
+		}
+
+		boolean changed = false;
+		if (op[addr] == JUMP || op[addr] == JUMPIF || op[addr] == JUMPCMP) {
+			int to = finalTarget(d[addr]);
+			if (to != d[addr]) {
+				d[addr] = to;
+				changed = true;
+			}
+		}
+		if (op[addr] == JUMP || op[addr] == RETURN || (op[addr] == HALT && n[addr] == 0)) {
+			for (int dead = next; dead < size && !target[dead]; dead++) {
+				removed[dead] = true;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Fuses the sequences that superinstructions stand for, marking the
+	 * instructions they replace as removed
+	 * @return true if anything was fused
+	 */
+	private boolean fuse() {
+		findTargets();
+		removed = new boolean[size];
+		boolean changed = false;
+		for (int addr = 0; addr < size; addr++) {
+			if (!removed[addr])
+				changed |= fuse(addr);
+		}
+		return changed;
+	}
+
+	/** Fuses the code starting at addr @return true if anything was fused */
+	private boolean fuse(int addr) {
+		if (fusable(addr, 4) && op[addr] == LOAD && isFrameRegister(r[addr]) && op[addr + 1] == LOADL
+				&& Machine.fitsSignedN(d[addr + 1]) && op[addr + 2] == ADD && op[addr + 3] == STORE
+				&& r[addr + 3] == r[addr] && d[addr + 3] == d[addr]) {
+			set(addr, INCR, d[addr + 1], r[addr], d[addr]);
+			removed[addr + 1] = removed[addr + 2] = removed[addr + 3] = true;
+			return true;
+		}
+		if (!fusable(addr, 2))
+			return false;
+		int next = addr + 1;
+		if (Machine.isComparison(op[addr]) && op[next] == JUMPIF
+				&& (n[next] == Machine.trueRep || n[next] == Machine.falseRep)) {
+			int comparison = n[next] == Machine.trueRep ? op[addr] : negated(op[addr]);
+			set(addr, JUMPCMP, comparison, r[next], d[next]);
+			removed[next] = true;
+			return true;
+		}
+		if (op[addr] == LOADL && Machine.isBinaryAluOp(op[next])) {
+			set(addr, OPL, op[next], 0, d[addr]);
+			removed[next] = true;
+			return true;
+		}
+		if (op[addr] == LOAD && op[next] == LOAD && r[addr] == r[next] && (r[addr] == LB || r[addr] == OB)
+				&& Machine.fitsSignedN(d[next])) {
+			set(addr, LOAD2, d[next], r[addr], d[addr]);
+			removed[next] = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the length instructions from addr are all there and
+	 *         control can only enter them at addr
+	 */
+	private boolean fusable(int addr, int length) {
+		if (addr + length > size)
+			return false;
+		for (int i = addr + 1; i < addr + length; i++) {
+			if (target[i] || removed[i])
+				return false;
+		}
+		return true;
+	}
+
+	/** @return the comparison that holds exactly when comparison op does not */
+	private static int negated(int op) {
+		switch (Machine.intToOp[op]) {
+		case LT:
+			return Op.GE.ordinal();
+		case LE:
+			return Op.GT.ordinal();
+		case GE:
+			return Op.LT.ordinal();
+		case GT:
+			return Op.LE.ordinal();
+		case EQ:
+			return Op.NE.ordinal();
+		default: // NE
+			return Op.EQ.ordinal();
+		}
+	}
+
+	/** @return where control ends up going to addr, following jumps */
+	private int finalTarget(int addr) {
+		int to = addr;
+		for (int hops = 0; op[to] == JUMP; hops++) {
+			if (hops == size)
+				return addr;  // jumps round in a loop
+			to = d[to];
+		}
+		return to;
+	}
+
+	private static boolean isFrameRegister(int reg) {
+		return reg == SB || reg == LB || reg == OB;
+	}
+
+	/** @return true if the instruction at addr only pushes a word */
+	private boolean isPurePush(int addr) {
+		return op[addr] == LOADL || op[addr] == LOADA || (op[addr] == LOAD && isFrameRegister(r[addr]));
+	}
+
+	private void set(int addr, int op, int n, int r, int d) {
+		this.op[addr] = op;
+		this.n[addr] = n;
+		this.r[addr] = r;
+		this.d[addr] = d;
+	}
+
+	/** Moves the instructions left up over the removed ones */
+	private void compact() {
+		int[] moved = new int[size + 1];
+		int left = 0;
+		for (int addr = 0; addr < size; addr++) {
+			moved[addr] = left;
+			if (!removed[addr]) {
+				set(left, op[addr], n[addr], r[addr], d[addr]);
+				left++;
+			}
+		}
+		moved[size] = left;
+		size = left;
+		for (int addr = 0; addr < size; addr++) {
+			if (isCodeAddress(addr))
+				d[addr] = moved[d[addr]];
+		}
+		for (int addr = 0; addr < newAddr.length; addr++)
+			newAddr[addr] = moved[newAddr[addr]];
+	}
+
+	private int[] pack() {
+		int[] packed = new int[size * Machine.instrWords];
+		for (int addr = 0; addr < size; addr++) {
+			packed[addr * Machine.instrWords] = Machine.pack(op[addr], n[addr], r[addr]);
+			packed[addr * Machine.instrWords + 1] = d[addr];
+		}
+		return packed;
+	}
+}
@@ -0,0 +1,366 @@
+/**
+ * Stack depths of mJAM code
+ */
+package miniJava.mJAM;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Works out, by following the control flow of a program, how many words each
+ * method needs on the stack above its frame header: its locals and the
+ * temporaries of the expressions it evaluates, at their deepest. A call only
+ * adds the callee's results less its arguments to the caller's stack; what
+ * the callee needs is counted against its own frame.
+ *
+ * The stack must be equally deep whichever way an instruction is reached,
+ * and no instruction may take more words off the stack than the method put
+ * on it. Code that breaks these rules, runs off the end of the code store or
+ * transfers control in a way that can not be followed (JUMPI, CALLD, or a
+ * jump or call that is not to a code address) has no depth.
+ */
+public final class StackDepth {
+
+	/** depth of code that has none */
+	public final static int UNKNOWN = -1;
+
+	// arguments and results of a method whose returns disagree, and of one
+	// that never returns
+	private final static int[] UNKNOWN_RETURN = {}, NO_RETURN = {};
+
+	private final int[] code;
+	private final int size;
+	// the arguments and results of each method by its entry, as its RETURN says
+	private final Map<Integer, int[]> returns = new HashMap<Integer, int[]>();
+	// the instructions reached by the current walk over the code, in order,
+	// and the depth before each, valid where reached matches the walk
+	private final int[] queue, depth, reached;
+	private int walk = 0, walked = 0;
+
+	/** @param code  packed code store holding the program, as in CodeStore */
+	public StackDepth(int[] code) {
+		this.code = code;
+		size = code.length / Machine.instrWords;
+		queue = new int[size];
+		depth = new int[size];
+		reached = new int[size];
+	}
+
+	/**
+	 * @return the most words the code from start, a method entry or CB, ever
+	 *         has above the stack top it started with, or UNKNOWN
+	 */
+	public int maxDepth(int start) {
+		if (!isCodeAddress(start))
+			return UNKNOWN;
+		walk++;
+		int count = reach(start, 0, 0), max = 0;
+		for (int i = 0; i < count; i++) {
+			int addr = queue[i];
+			int word = code[addr * Machine.instrWords], d = code[addr * Machine.instrWords + 1];
+			int op = Machine.opOf(word), r = Machine.rOf(word), n = Machine.nOf(word);
+			if (op >= Machine.intToOp.length)
+				return UNKNOWN;
+			int pops = 0, pushes = 0, target = UNKNOWN;
+			boolean next = true;
+			switch (Machine.intToOp[op]) {
+			case LOAD:
+			case LOADA:
+			case LOADL:
+				pushes = 1;
+				break;
+			case LOAD2:
+				pushes = 2;
+				break;
+			case PUSH:
+				if (d < 0)
+					return UNKNOWN;
+				pushes = d;
+				break;
+			case STORE:
+				pops = 1;
+				break;
+			case STOREI:
+			case STOREF:
+				pops = 2;
+				break;
+			case STOREX:
+				pops = 3;
+				break;
+			case LOADI:
+			case LOADF:
+			case NOT:
+			case NEG:
+			case OPL:
+				pops = pushes = 1;
+				break;
+			case AND:
+			case OR:
+			case ADD:
+			case SUB:
+			case MULT:
+			case DIV:
+			case MOD:
+			case LT:
+			case LE:
+			case GE:
+			case GT:
+			case EQ:
+			case NE:
+			case LOADX:
+				pops = 2;
+				pushes = 1;
+				break;
+			case INCR:
+				break;
+			case POP:
+				if (d < 0)
+					return UNKNOWN;
+				pops = n + d;
+				pushes = n;
+				break;
+			case CALL:
+			case CALLI:
+				if (op == Machine.Op.CALL.ordinal() && r == Machine.Reg.PB.ordinal()) {
+					if (d < 0 || d >= Machine.intToPrim.length)
+						return UNKNOWN;
+					pops = primitivePops(Machine.intToPrim[d]);
+					pushes = primitivePushes(Machine.intToPrim[d]);
+					break;
+				}
+				if (r != Machine.Reg.CB.ordinal())
+					return UNKNOWN;
+				int[] callee = returns(Machine.CB + d);
+				if (callee == UNKNOWN_RETURN)
+					return UNKNOWN;
+				if (callee == NO_RETURN)
+					next = false;
+				else {
+					// CALLI takes the instance too, its slot becoming the frame's
+					pops = callee[0] + (op == Machine.Op.CALLI.ordinal() ? 1 : 0);
+					pushes = callee[1];
+				}
+				break;
+			case RETURN:
+				pops = n;
+				next = false;
+				break;
+			case JUMP:
+				target = codeTarget(r, d);
+				if (target == UNKNOWN)
+					return UNKNOWN;
+				next = false;
+				break;
+			case JUMPIF:
+				pops = 1;
+				target = codeTarget(r, d);
+				if (target == UNKNOWN)
+					return UNKNOWN;
+				break;
+			case JUMPCMP:
+				pops = 2;
+				target = codeTarget(r, d);
+				if (target == UNKNOWN)
+					return UNKNOWN;
+				break;
+			case HALT:
+				next = false;
+				break;
+			default: // JUMPI, CALLD
+				return UNKNOWN;
+			}
+			int before = depth[addr - Machine.CB];
+			if (before < pops)
+				return UNKNOWN;
+			int after = before - pops + pushes;
+			max = Math.max(max, after);
+			if (next && (!isCodeAddress(addr + 1) || (count = reach(addr + 1, after, count)) == UNKNOWN))
+				return UNKNOWN;
+			if (target != UNKNOWN && (count = reach(target, after, count)) == UNKNOWN)
+				return UNKNOWN;
+		}
+		walked = count;
+		return max;
+	}
+
+	/**
+	 * @return the number of instructions the last maxDepth reached, if it
+	 *         returned a depth
+	 */
+	int reached() {
+		return walked;
+	}
+
+	/** @return the i-th instruction the last maxDepth reached */
+	int reached(int i) {
+		return queue[i];
+	}
+
+	/** @return the stack depth before the instruction at addr in the last maxDepth */
+	int depthBefore(int addr) {
+		return depth[addr - Machine.CB];
+	}
+
+	/**
+	 * @return the words of arguments the method at entry takes off the stack
+	 *         when it returns, 0 if it never returns, or UNKNOWN
+	 */
+	int arguments(int entry) {
+		int[] callee = returns(entry);
+		return callee == UNKNOWN_RETURN ? UNKNOWN : callee == NO_RETURN ? 0 : callee[0];
+	}
+
+	/**
+	 * Records that the stack is words deep before the instruction at addr,
+	 * queueing it if the walk had not reached it yet
+	 * @return the number of instructions queued, or UNKNOWN if addr was
+	 *         reached before with another depth
+	 */
+	private int reach(int addr, int words, int count) {
+		int i = addr - Machine.CB;
+		if (reached[i] != walk) {
+			reached[i] = walk;
+			depth[i] = words;
+			queue[count++] = addr;
+			return count;
+		}
+		return depth[i] == words ? count : UNKNOWN;
+	}
+
+	/**
+	 * @return the arguments and results of the method at entry, as the
+	 *         RETURNs it can reach say, NO_RETURN if it reaches none and
+	 *         UNKNOWN_RETURN if they disagree or its control flow can not be
+	 *         followed
+	 */
+	private int[] returns(int entry) {
+		int[] known = returns.get(entry);
+		if (known != null)
+			return known;
+		int[] result = NO_RETURN;
+		if (!isCodeAddress(entry))
+			result = UNKNOWN_RETURN;
+		else {
+			boolean[] seen = new boolean[size];
+			int[] work = new int[size];
+			int count = 0;
+			work[count++] = entry;
+			seen[entry - Machine.CB] = true;
+			walk: for (int i = 0; i < count; i++) {
+				int addr = work[i];
+				int word = code[addr * Machine.instrWords], d = code[addr * Machine.instrWords + 1];
+				int op = Machine.opOf(word), r = Machine.rOf(word), n = Machine.nOf(word);
+				int target = UNKNOWN;
+				boolean next = true;
+				if (op >= Machine.intToOp.length) {
+					result = UNKNOWN_RETURN;
+					break;
+				}
+				switch (Machine.intToOp[op]) {
+				case RETURN:
+					if (result == NO_RETURN)
+						result = new int[] { d, n };
+					else if (result[0] != d || result[1] != n) {
+						result = UNKNOWN_RETURN;
+						break walk;
+					}
+					next = false;
+					break;
+				case HALT:
+					next = false;
+					break;
+				case JUMP:
+				case JUMPIF:
+				case JUMPCMP:
+					target = codeTarget(r, d);
+					if (target == UNKNOWN) {
+						result = UNKNOWN_RETURN;
+						break walk;
+					}
+					next = op != Machine.Op.JUMP.ordinal();
+					break;
+				case JUMPI:
+				case CALLD:
+					result = UNKNOWN_RETURN;
+					break walk;
+				default:
+					break;
+				}
+				if (next && !isCodeAddress(addr + 1)) {
+					result = UNKNOWN_RETURN;
+					break;
+				}
+				if (next && !seen[addr + 1 - Machine.CB]) {
+					seen[addr + 1 - Machine.CB] = true;
+					work[count++] = addr + 1;
+				}
+				if (target != UNKNOWN && !seen[target - Machine.CB]) {
+					seen[target - Machine.CB] = true;
+					work[count++] = target;
+				}
+			}
+		}
+		returns.put(entry, result);
+		return result;
+	}
+
+	/** @return the code address a jump or call to d[r] goes to, or UNKNOWN */
+	private int codeTarget(int r, int d) {
+		return r == Machine.Reg.CB.ordinal() && isCodeAddress(Machine.CB + d) ? Machine.CB + d : UNKNOWN;
+	}
+
+	private boolean isCodeAddress(int addr) {
+		return addr >= Machine.CB && addr < Machine.CB + size;
+	}
+
+	/** @return the number of words primitive prim takes off the stack */
+	static int primitivePops(Machine.Prim prim) {
+		switch (prim) {
+		case id:
+		case eol:
+		case eof:
+		case geteol:
+		case puteol:
+			return 0;
+		case not:
+		case neg:
+		case succ:
+		case pred:
+		case get:
+		case put:
+		case getint:
+		case putint:
+		case putintnl:
+		case alloc:
+		case dispose:
+		case newarr:
+		case arraylen:
+			return 1;
+		case arrayupd:
+		case fieldupd:
+			return 3;
+		default: // the binary operations, newobj, arrayref, fieldref
+			return 2;
+		}
+	}
+
+	/** @return the number of words primitive prim leaves on the stack */
+	static int primitivePushes(Machine.Prim prim) {
+		switch (prim) {
+		case id:
+		case get:
+		case put:
+		case geteol:
+		case puteol:
+		case getint:
+		case putint:
+		case putintnl:
+		case dispose:
+		case arrayupd:
+		case fieldupd:
+			return 0;
+		default:
+			return 1;
+		}
+	}
+}
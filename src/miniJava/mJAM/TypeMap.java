@@ -0,0 +1,318 @@
+/**
+ * Type metadata of an mJAM program
+ */
+package miniJava.mJAM;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Says which data words of a program hold heap references, as worked out by
+ * the compiler from the declared types:
+ * <ul>
+ * <li>the static fields, by SB offset,</li>
+ * <li>every allocation site, i.e. the code address of each newobj or newarr
+ *     call, with its source line, the type allocated there and which of its
+ *     words can hold references, and</li>
+ * <li>every method, with the LB offsets of its reference parameters and
+ *     locals and the code addresses at which each of them is in scope, and
+ *     how many words its stack needs above the frame header, as StackDepth
+ *     works out.</li>
+ * </ul>
+ * Anything the map does not describe, such as intermediate results on the
+ * stack, is left to the reference tags the machine keeps while running.
+ */
+public final class TypeMap {
+
+	/** first word of the type map in an object file, after the code */
+	public final static int MAGIC = 0x54595045; // "TYPE"
+
+	/** An allocation site */
+	public final static class Site {
+		public final int addr;         // code address of the newobj or newarr call
+		public final int line;         // source line of the allocation, 0 if unknown
+		public final String typeName;  // class name, or element type followed by []
+		public final boolean array;
+		public final int[] refFields;  // objects: indices of the reference fields
+		public final boolean refElements; // arrays: whether the elements are references
+
+		Site(int addr, int line, String typeName, boolean array, int[] refFields, boolean refElements) {
+			this.addr = addr;
+			this.line = line;
+			this.typeName = typeName;
+			this.array = array;
+			this.refFields = refFields;
+			this.refElements = refElements;
+		}
+
+		/** @return true if an instance allocated here can hold references */
+		public boolean holdsReferences() {
+			return array ? refElements : refFields.length > 0;
+		}
+	}
+
+	/** The reference parameters and locals of a method, and its stack depth */
+	public final static class Frame {
+		public final String method;
+		public final int start, end;   // code addresses [start, end) of the method
+		private int maxDepth = StackDepth.UNKNOWN;
+		private int size = 0;
+		private int[] offsets = new int[4], from = new int[4], to = new int[4];
+
+		Frame(String method, int start, int end) {
+			this.method = method;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Records that LB offset holds a reference while the code in [from, to)
+		 * runs
+		 */
+		public void addSlot(int offset, int from, int to) {
+			if (size == offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2 * size);
+				this.from = Arrays.copyOf(this.from, 2 * size);
+				this.to = Arrays.copyOf(this.to, 2 * size);
+			}
+			offsets[size] = offset;
+			this.from[size] = from;
+			this.to[size] = to;
+			size++;
+		}
+
+		/**
+		 * Records the most words the method has on its stack above the frame
+		 * header, for its locals and temporaries
+		 */
+		public void setMaxDepth(int maxDepth) {
+			this.maxDepth = maxDepth;
+		}
+
+		/** @return the most words the method has on its stack above the frame header, or StackDepth.UNKNOWN */
+		public int maxDepth() {
+			return maxDepth;
+		}
+
+		public int slots() {
+			return size;
+		}
+
+		public int offset(int i) {
+			return offsets[i];
+		}
+
+		public int from(int i) {
+			return from[i];
+		}
+
+		public int to(int i) {
+			return to[i];
+		}
+
+		/** @return true if LB offset holds a reference when the code at addr runs */
+		public boolean isReference(int offset, int addr) {
+			for (int i = 0; i < size; i++) {
+				if (offsets[i] == offset && from[i] <= addr && addr < to[i])
+					return true;
+			}
+			return false;
+		}
+	}
+
+	private int[] staticRefs = new int[0];
+	// both in increasing code address order, as the compiler emits them
+	private final List<Site> sites = new ArrayList<Site>();
+	private final List<Frame> frames = new ArrayList<Frame>();
+
+	// BUILDING, as the code is generated
+
+	public void addStaticReference(int offset) {
+		staticRefs = Arrays.copyOf(staticRefs, staticRefs.length + 1);
+		staticRefs[staticRefs.length - 1] = offset;
+	}
+
+	public void addObjectSite(int addr, int line, String className, int[] refFields) {
+		addSite(new Site(addr, line, className, false, refFields, false));
+	}
+
+	public void addArraySite(int addr, int line, String elementTypeName, boolean refElements) {
+		addSite(new Site(addr, line, elementTypeName + "[]", true, new int[0], refElements));
+	}
+
+	private void addSite(Site site) {
+		if (!sites.isEmpty() && sites.get(sites.size() - 1).addr >= site.addr)
+			throw new IllegalArgumentException("allocation site out of order at " + site.addr);
+		sites.add(site);
+	}
+
+	/**
+	 * Adds a method whose code occupies [start, end); its slots are added to
+	 * the frame returned
+	 */
+	public Frame addFrame(String method, int start, int end) {
+		if (!frames.isEmpty() && frames.get(frames.size() - 1).end > start)
+			throw new IllegalArgumentException("method out of order at " + start);
+		Frame frame = new Frame(method, start, end);
+		frames.add(frame);
+		return frame;
+	}
+
+	/**
+	 * Moves the code addresses in the map along with the code, as an optimizer
+	 * moves it: the instruction at addr to newAddr[addr]. An instruction that
+	 * was removed is at the address of the next one left, so its site is
+	 * dropped. Stack depths are kept, as an optimizer never makes the stack
+	 * deeper.
+	 */
+	void relocate(int[] newAddr) {
+		List<Site> moved = new ArrayList<Site>();
+		for (Site site : sites) {
+			if (newAddr[site.addr + 1] > newAddr[site.addr])
+				moved.add(new Site(newAddr[site.addr], site.line, site.typeName, site.array, site.refFields,
+						site.refElements));
+		}
+		sites.clear();
+		sites.addAll(moved);
+		List<Frame> movedFrames = new ArrayList<Frame>();
+		for (Frame frame : frames) {
+			Frame movedFrame = new Frame(frame.method, newAddr[frame.start], newAddr[frame.end]);
+			movedFrame.maxDepth = frame.maxDepth;
+			for (int i = 0; i < frame.size; i++)
+				movedFrame.addSlot(frame.offsets[i], newAddr[frame.from[i]], newAddr[frame.to[i]]);
+			movedFrames.add(movedFrame);
+		}
+		frames.clear();
+		frames.addAll(movedFrames);
+	}
+
+	// LOOKUP
+
+	/** @return SB offsets of the static fields that hold references */
+	public int[] getStaticReferences() {
+		return staticRefs.clone();
+	}
+
+	public List<Site> getSites() {
+		return java.util.Collections.unmodifiableList(sites);
+	}
+
+	public List<Frame> getFrames() {
+		return java.util.Collections.unmodifiableList(frames);
+	}
+
+	/** @return the allocation site at code address addr, or null if there is none */
+	public Site site(int addr) {
+		int low = 0, high = sites.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midAddr = sites.get(mid).addr;
+			if (midAddr < addr)
+				low = mid + 1;
+			else if (midAddr > addr)
+				high = mid - 1;
+			else
+				return sites.get(mid);
+		}
+		return null;
+	}
+
+	/** @return the method whose code includes addr, or null if there is none */
+	public Frame frame(int addr) {
+		int low = 0, high = frames.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Frame frame = frames.get(mid);
+			if (frame.end <= addr)
+				low = mid + 1;
+			else if (frame.start > addr)
+				high = mid - 1;
+			else
+				return frame;
+		}
+		return null;
+	}
+
+	// OBJECT FILE FORMAT, following the code
+
+	void write(DataOutputStream os) throws IOException {
+		os.writeInt(MAGIC);
+		writeInts(os, staticRefs);
+		os.writeInt(sites.size());
+		for (Site site : sites) {
+			os.writeInt(site.addr);
+			os.writeInt(site.line);
+			os.writeUTF(site.typeName);
+			os.writeBoolean(site.array);
+			writeInts(os, site.refFields);
+			os.writeBoolean(site.refElements);
+		}
+		os.writeInt(frames.size());
+		for (Frame frame : frames) {
+			os.writeUTF(frame.method);
+			os.writeInt(frame.start);
+			os.writeInt(frame.end);
+			os.writeInt(frame.maxDepth);
+			os.writeInt(frame.size);
+			for (int i = 0; i < frame.size; i++) {
+				os.writeInt(frame.offsets[i]);
+				os.writeInt(frame.from[i]);
+				os.writeInt(frame.to[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a type map written by write, starting with its MAGIC word
+	 * @param depths  whether the map records stack depths, as maps in object
+	 *                files since version 6 do
+	 * @throws IOException if the map is missing or malformed
+	 */
+	static TypeMap read(DataInputStream is, boolean depths) throws IOException {
+		if (is.readInt() != MAGIC)
+			throw new IOException("no type map");
+		TypeMap types = new TypeMap();
+		types.staticRefs = readInts(is);
+		int count = checkCount(is.readInt());
+		for (int i = 0; i < count; i++) {
+			int addr = is.readInt();
+			int line = is.readInt();
+			String typeName = is.readUTF();
+			boolean array = is.readBoolean();
+			int[] refFields = readInts(is);
+			types.addSite(new Site(addr, line, typeName, array, refFields, is.readBoolean()));
+		}
+		count = checkCount(is.readInt());
+		for (int i = 0; i < count; i++) {
+			Frame frame = types.addFrame(is.readUTF(), is.readInt(), is.readInt());
+			if (depths)
+				frame.maxDepth = Math.max(is.readInt(), StackDepth.UNKNOWN);
+			for (int slots = checkCount(is.readInt()); slots > 0; slots--)
+				frame.addSlot(is.readInt(), is.readInt(), is.readInt());
+		}
+		return types;
+	}
+
+	private static void writeInts(DataOutputStream os, int[] values) throws IOException {
+		os.writeInt(values.length);
+		for (int value : values)
+			os.writeInt(value);
+	}
+
+	private static int[] readInts(DataInputStream is) throws IOException {
+		int[] values = new int[checkCount(is.readInt())];
+		for (int i = 0; i < values.length; i++)
+			values[i] = is.readInt();
+		return values;
+	}
+
+	private static int checkCount(int count) throws IOException {
+		if (count < 0 || count > Machine.maxCodeSize)
+			throw new IOException("invalid type map count " + count);
+		return count;
+	}
+}
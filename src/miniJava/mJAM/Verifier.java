@@ -0,0 +1,251 @@
+/**
+ * Verifies mJAM code before it runs
+ */
+package miniJava.mJAM;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks, when a program is loaded, what the interpreter would otherwise have
+ * to check as it runs. Starting from CB and following every call, each method
+ * must:
+ * <ul>
+ * <li>use valid operations, primitives and registers only, and no JUMPI,
+ * CALLD, LOADI or STOREI, whose targets and addresses can not be followed;
+ * <li>jump and call to code addresses only, and never run off the end of the
+ * code store;
+ * <li>keep the stack balanced, as StackDepth works it out, and need no more
+ * of it than the type map records;
+ * <li>address only its own parameters, its locals and temporaries below the
+ * stack top, the static fields, and the fields of its instance, never the
+ * frame header, and use OB only if it is called with CALLI.
+ * </ul>
+ * The code from CB, which sets up the static fields and calls main, has no
+ * frame: it may not use LB or OB, or return.
+ *
+ * OB-relative operands are not checked as the program runs. Instead the
+ * largest field offset each method addresses from OB is recorded, and CALLI,
+ * the only way into a method that uses OB, fails unless its instance is an
+ * object with more fields than that. What other references point to is not
+ * known until the program runs, so null references, field offsets past the
+ * end of an object and array indices are still checked then, by LOADF,
+ * STOREF, LOADX, STOREX and CALLI, and so is the return address RETURN finds
+ * in the frame.
+ */
+public final class Verifier {
+
+	private final int[] code;
+	private final TypeMap types;
+	private final StackDepth depths;
+	// the stack space of each method verified, by its entry
+	private final Map<Integer, Integer> spaces = new HashMap<Integer, Integer>();
+	// entries of the methods called with CALL
+	private final Set<Integer> calledDirectly = new HashSet<Integer>();
+	// the largest field offset of each method that uses OB, by its entry
+	private final Map<Integer, Integer> instanceFields = new HashMap<Integer, Integer>();
+	// words above SB that hold static fields, the least depth below any frame
+	// the code from CB makes
+	private int statics;
+	private String problem;
+	private boolean verified = false;
+
+	/**
+	 * @param code  packed code store holding the program, as in CodeStore
+	 * @param types  type map of the program, or null
+	 */
+	public Verifier(int[] code, TypeMap types) {
+		this.code = code;
+		this.types = types;
+		depths = new StackDepth(code);
+	}
+
+	/**
+	 * Verifies the program, the first time it is called
+	 * @return null if the program passes, or else the first problem found, as
+	 *         "at addr: reason"
+	 */
+	public String verify() {
+		if (!verified) {
+			verified = true;
+			problem = check();
+		}
+		return problem;
+	}
+
+	/**
+	 * @return the words the method at entry needs on the stack above its frame
+	 *         header, once the program has passed, 0 if only unreachable code
+	 *         calls it
+	 */
+	int space(int entry) {
+		Integer words = spaces.get(entry);
+		return words == null ? 0 : words;
+	}
+
+	/**
+	 * @return the largest field offset the method at entry addresses from OB,
+	 *         once the program has passed, -1 if it does not use OB
+	 */
+	int instanceField(int entry) {
+		Integer offset = instanceFields.get(entry);
+		return offset == null ? -1 : offset;
+	}
+
+	private String check() {
+		if (code.length == 0)
+			return "at " + Machine.CB + ": no code";
+		List<Integer> entries = new ArrayList<Integer>();
+		entries.add(Machine.CB);
+		spaces.put(Machine.CB, StackDepth.UNKNOWN);
+		for (int i = 0; i < entries.size(); i++) {
+			int entry = entries.get(i);
+			String found = checkMethod(entry, entries);
+			if (found != null)
+				return found;
+		}
+		for (int entry : instanceFields.keySet()) {
+			if (calledDirectly.contains(entry))
+				return "at " + entry + ": method uses OB but is called with CALL";
+		}
+		return null;
+	}
+
+	/**
+	 * Checks the method at entry, or the code from CB, adding the methods it
+	 * calls to entries
+	 * @return the first problem found, or null
+	 */
+	private String checkMethod(int entry, List<Integer> entries) {
+		boolean prelude = entry == Machine.CB;
+		int max = depths.maxDepth(entry);
+		if (max == StackDepth.UNKNOWN)
+			return "at " + entry + ": stack is unbalanced or control flow can not be followed";
+		int args = prelude ? 0 : depths.arguments(entry);
+		if (args == StackDepth.UNKNOWN)
+			return "at " + entry + ": returns disagree";
+		spaces.put(entry, max);
+		if (prelude)
+			statics = max;
+		else if (types != null) {
+			TypeMap.Frame frame = types.frame(entry);
+			if (frame != null && frame.start == entry && frame.maxDepth() != StackDepth.UNKNOWN
+					&& frame.maxDepth() < max)
+				return "at " + entry + ": type map records stack depth " + frame.maxDepth() + ", method needs " + max;
+		}
+
+		for (int i = 0, count = depths.reached(); i < count; i++) {
+			int addr = depths.reached(i);
+			int word = code[addr * Machine.instrWords], d = code[addr * Machine.instrWords + 1];
+			int op = Machine.opOf(word), r = Machine.rOf(word), n = Machine.nOf(word);
+			int before = depths.depthBefore(addr);
+			if (r >= Machine.intToReg.length)
+				return "at " + addr + ": invalid register " + r;
+			Machine.Reg reg = Machine.intToReg[r];
+			String found = null;
+			switch (Machine.intToOp[op]) {
+			case LOAD:
+			case STORE:
+			case INCR:
+				found = checkData(prelude, entry, args, reg, d, before);
+				break;
+			case LOAD2:
+				// the second load may read the word the first pushed
+				if (reg != Machine.Reg.LB && reg != Machine.Reg.OB)
+					found = "LOAD2 from " + reg;
+				else if ((found = checkData(prelude, entry, args, reg, d, before)) == null)
+					found = checkData(prelude, entry, args, reg, Machine.signedNOf(word), before + 1);
+				break;
+			case LOADI:
+			case STOREI:
+				found = Machine.intToOp[op] + " can address any word";
+				break;
+			case OPL:
+				if (!Machine.isBinaryAluOp(n))
+					found = "invalid operation " + n;
+				break;
+			case JUMPCMP:
+				if (!Machine.isComparison(n))
+					found = "invalid comparison " + n;
+				break;
+			case LOADF:
+			case STOREF:
+				if (d < 0)
+					found = "invalid field offset " + d;
+				break;
+			case CALL:
+			case CALLI:
+				if (reg == Machine.Reg.PB)
+					break;
+				int target = Machine.CB + d, pops = depths.arguments(target);
+				if (pops == StackDepth.UNKNOWN)
+					break; // found when the callee is checked
+				if (op == Machine.Op.CALL.ordinal())
+					calledDirectly.add(target);
+				else
+					pops++;
+				if (prelude)
+					statics = Math.min(statics, before - pops);
+				if (!spaces.containsKey(target)) {
+					spaces.put(target, StackDepth.UNKNOWN);
+					entries.add(target);
+				}
+				break;
+			case RETURN:
+				if (prelude)
+					found = "the code from CB can not return";
+				else if (n > 1)
+					found = "RETURN of " + n + " words";
+				else if (d < 0)
+					found = "RETURN of " + d + " arguments";
+				break;
+			default:
+				break;
+			}
+			if (found != null)
+				return "at " + addr + ": " + found;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks a load, store or increment of the word d[reg]
+	 * @param live  words of locals and temporaries on the stack before it
+	 * @return the problem, or null
+	 */
+	private String checkData(boolean prelude, int entry, int args, Machine.Reg reg, int d, int live) {
+		switch (reg) {
+		case SB:
+			// the code from CB runs with its stack on SB
+			if (d < 0 || d >= (prelude ? live : statics))
+				return "SB offset " + d + " is not a static field";
+			return null;
+		case LB:
+			if (prelude)
+				return "the code from CB has no frame for LB";
+			if (d >= -args && d < 0 || d >= 3 && d < 3 + live)
+				return null;
+			return "LB offset " + d + " is not a parameter or local";
+		case OB:
+			if (prelude)
+				return "the code from CB has no instance for OB";
+			if (d < 0)
+				return "invalid field offset " + d;
+			// checked against the instance by the CALLI that set it, see check()
+			Integer offset = instanceFields.get(entry);
+			if (offset == null || offset < d)
+				instanceFields.put(entry, d);
+			return null;
+		case ST:
+			if (d >= -live && d < 0)
+				return null;
+			return "ST offset " + d + " is not on the stack";
+		default:
+			return "register " + reg + " does not address data";
+		}
+	}
+}
@@ -0,0 +1,1988 @@
+/**
+ * mJAM virtual machine
+ * @author prins
+ * @version COMP 520 V2.3
+ */
+package miniJava.mJAM;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+
+/**
+ * One mJAM machine: its own code store, data store and registers. Any number
+ * of machines can run side by side in one JVM, e.g. submitted as Callables to
+ * an ExecutorService, as long as each machine is used by one thread at a time.
+ * The result of call() is the machine status once the program stops.
+ */
+public class VirtualMachine implements Callable<Integer> {
+
+	// CODE STORE, packed as in CodeStore
+	private final int[] code;
+	private DecodedProgram decoded;
+	// null when the program came without them
+	private final TypeMap types;
+	private final DebugInfo debug;
+
+	// I/O of the running program
+	private InputStream in = System.in;
+	private PrintStream out = System.out;
+
+	// DATA STORE
+	// the stack occupies data[SB..HB) and grows upward, the heap starts at HB
+	// and also grows upward so that enlarging the store never moves an object.
+	// The words from HT to the end of the store are always zero (and untagged),
+	// so a new instance is allocated by just bumping HT past it
+	public final static int DEFAULT_STACK_SIZE = 1024, DEFAULT_HEAP_SIZE = 1024;
+
+	private int stackSize = DEFAULT_STACK_SIZE, heapSize = DEFAULT_HEAP_SIZE;
+	private boolean growHeap = false;
+	private int maxHeapSize = Integer.MAX_VALUE - DEFAULT_STACK_SIZE;
+
+	int[] data = new int[0];
+	// reference tags, one per data word: Collector.REF when the word holds a
+	// heap reference. Kept for every run, used when garbage collection is on
+	byte[] refs = new byte[0];
+
+	// null unless the heap is garbage collected
+	private Collector collector;
+	// set once the program allocates a block without an object header, after
+	// which the heap can no longer be walked and is never collected
+	boolean rawHeapBlocks = false;
+
+	// when profiling the heap, the code address that allocated each instance,
+	// kept at the address of its header; both null otherwise
+	int[] allocSites;
+	HeapProfiler profiler;
+	private boolean profileHeap = false;
+	// when profiling the CPU, instructions between call stack samples, and the
+	// profiler of the last run; 0 and null otherwise
+	private int cpuSampleInterval = 0;
+	private CpuProfiler cpuProfiler;
+	// tag for the header of an instance allocated at each code address, from
+	// the type map, or null without one
+	private final byte[] siteTags;
+
+	// objects and arrays allocated in this run, and the words they took
+	long allocations, wordsAllocated;
+
+	// DATA STORE REGISTERS AND OTHER REGISTERS
+	final static int CB = 0, SB = 0;
+	int HB = SB + stackSize; // = upper bound of stack + 1
+
+	final int CT;
+	int CP, ST, HT, LB, OB, status, temp;
+
+	// machine status values
+	public final static int running = 0, halted = 1, failedDataStoreFull = 2,
+			failedInvalidCodeAddress = 3, failedInvalidInstruction = 4,
+			failedOverflow = 5, failedZeroDivide = 6, failedIOError = 7,
+			failedArrayIndex = 8, failedNullRef = 9, failedHeapRef =10,
+			failedFieldIndex = 11, failedMethodIndex = 12, stopped = 13;
+
+	// set by stop, from any thread, to end the run at the next jump or call,
+	// and cleared when the next run starts
+	private volatile boolean stopping = false;
+
+	long accumulator;
+
+	// Debugger state
+	enum DebuggerStatus {
+		PAUSED, RUNNING
+	}
+
+	DebuggerStatus debuggerStatus = DebuggerStatus.PAUSED;
+	ArrayList<Integer> breakpoints = new ArrayList<Integer>();
+	List<String> sourceLines;
+
+	/**
+	 * Creates a machine for a program
+	 * @param code  instructions packed as in CodeStore, exactly CT of them
+	 */
+	public VirtualMachine(int[] code) {
+		this(code, null);
+	}
+
+	/**
+	 * Creates a machine for a program and its type map
+	 * @param code  instructions packed as in CodeStore, exactly CT of them
+	 * @param types  type map of the program, or null
+	 */
+	public VirtualMachine(int[] code, TypeMap types) {
+		this(code, types, null);
+	}
+
+	/**
+	 * Creates a machine for a program, its type map and its debug symbols
+	 * @param code  instructions packed as in CodeStore, exactly CT of them
+	 * @param types  type map of the program, or null
+	 * @param debug  debug symbols of the program, or null
+	 */
+	public VirtualMachine(int[] code, TypeMap types, DebugInfo debug) {
+		if (code.length % Machine.instrWords != 0)
+			throw new IllegalArgumentException("code is not a whole number of instructions");
+		this.code = code;
+		this.CT = Machine.CB + code.length / Machine.instrWords;
+		this.types = types;
+		this.debug = debug;
+		if (types == null)
+			siteTags = null;
+		else {
+			siteTags = new byte[CT - Machine.CB];
+			for (TypeMap.Site site : types.getSites()) {
+				if (site.addr >= Machine.CB && site.addr < CT && !site.holdsReferences())
+					siteTags[site.addr - Machine.CB] = Collector.SCALARS;
+			}
+		}
+	}
+
+	/**
+	 * Creates a machine for the same program as another machine, sharing its
+	 * code, type map, debug symbols and decoded instructions, none of which a
+	 * machine modifies. The data store, registers and settings are its own.
+	 */
+	public VirtualMachine(VirtualMachine program) {
+		code = program.code;
+		CT = program.CT;
+		types = program.types;
+		debug = program.debug;
+		siteTags = program.siteTags;
+		decoded = program.decoded();
+	}
+
+	/**
+	 * Creates a machine for the program in an object file, with its type map
+	 * and debug symbols if the file has them
+	 * @return null if the object file can not be read
+	 */
+	public static VirtualMachine load(String objectFileName) {
+		ObjectFile objectFile = new ObjectFile(objectFileName);
+		int[] code = objectFile.readCode();
+		return code == null ? null
+				: new VirtualMachine(code, objectFile.readTypes(), objectFile.readDebugInfo());
+	}
+
+	public void setInput(InputStream in) {
+		this.in = in;
+	}
+
+	public void setOutput(PrintStream out) {
+		this.out = out;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	int content(int r) {
+		// Returns the current content of register r,
+		Machine.Reg reg = Machine.intToReg[r];
+		switch (reg) {
+		case CB:
+			return CB;
+		case CT:
+			return CT;
+		case PB:
+			return Machine.PB;
+		case PT:
+			return Machine.PT;
+		case SB:
+			return SB;
+		case ST:
+			return ST;
+		case HB:
+			return HB;
+		case HT:
+			return HT;
+		case LB:
+			return LB;
+		case OB:
+			return OB;
+		case CP:
+			return CP;
+		default:
+			return 0;
+		}
+	}
+
+	// DATA STORE CONFIGURATION
+
+	/**
+	 * Sizes the stack and heap segments of the data store for the next run
+	 * @param stackWords  number of words reserved for the execution stack
+	 * @param heapWords   number of words initially reserved for the heap
+	 * @param grow        if true the heap is enlarged on demand instead of failing
+	 * @param maxHeapWords  upper bound on the heap size when growing
+	 */
+	public void setDataStore(int stackWords, int heapWords, boolean grow, int maxHeapWords) {
+		checkDataStore(stackWords, heapWords, maxHeapWords);
+		stackSize = stackWords;
+		heapSize = heapWords;
+		growHeap = grow;
+		maxHeapSize = Math.min(maxHeapWords, Integer.MAX_VALUE - stackWords);
+	}
+
+	public void setDataStore(int stackWords, int heapWords, boolean grow) {
+		setDataStore(stackWords, heapWords, grow, Integer.MAX_VALUE - stackWords);
+	}
+
+	/**
+	 * Turns garbage collection of the heap on or off for the next run. When
+	 * on, a full heap is collected before it is enlarged or the program fails.
+	 */
+	public void setGarbageCollection(boolean collect) {
+		collector = collect ? new Collector() : null;
+	}
+
+	/**
+	 * Turns heap profiling on or off for the next run. When on, the
+	 * allocation site of every object and array is recorded, for
+	 * writeHeapProfile to report.
+	 */
+	public void setHeapProfiling(boolean profile) {
+		profileHeap = profile;
+	}
+
+	/**
+	 * Turns CPU profiling on or off for the next run. When on, the
+	 * instructions executed at each code address are counted and the call
+	 * stack is sampled every interval instructions, for writeCpuProfile and
+	 * writeFlatCpuProfile to report. The program runs several times slower.
+	 * @param interval  instructions between samples, 0 to turn profiling off
+	 */
+	public void setCpuProfiling(int interval) {
+		if (interval < 0)
+			throw new IllegalArgumentException("invalid sampling interval " + interval);
+		cpuSampleInterval = interval;
+	}
+
+	static void checkDataStore(int stackWords, int heapWords, int maxHeapWords) {
+		if (stackWords < Machine.linkDataSize || heapWords < 0 || maxHeapWords < heapWords)
+			throw new IllegalArgumentException("invalid mJAM data store size");
+	}
+
+	void allocateDataStore() {
+		HB = SB + stackSize;
+		if (data.length != HB + heapSize) {
+			data = new int[HB + heapSize];
+			refs = new byte[HB + heapSize];
+		} else {
+			java.util.Arrays.fill(data, HB, data.length, 0);
+			java.util.Arrays.fill(refs, (byte) 0);
+		}
+		rawHeapBlocks = false;
+		if (collector != null)
+			collector = new Collector();
+		allocSites = profileHeap ? new int[data.length] : null;
+		profiler = profileHeap ? new HeapProfiler(CT - Machine.CB, types) : null;
+		cpuProfiler = cpuSampleInterval > 0 ? new CpuProfiler(code, debug, cpuSampleInterval) : null;
+	}
+
+	// PROGRAM STATUS
+
+	void dump() {
+		// Writes a summary of the machine state.
+		int addr, dynamicLink;
+		out.println("");
+		out.println("At instruction " + CP
+				+ ", state of mJAM data store and registers is:");
+		out.println("");
+		if (HT == HB)
+			out.println("            |--------|          (heap is empty)");
+		else {
+			out.println("      HT--> ");
+			out.println("            |--------|");
+			for (addr = HT - 1; addr >= HB; addr--) {
+				out.print(rightPad(6, addr + ":"));
+				if (addr == OB)
+					out.print("OB--> ");
+				else if (addr == HB)
+					out.print("HB--> ");
+				else
+					out.print("      ");
+				out.println("|" + leftPad(8, String.valueOf(data[addr]))
+						+ "|");
+			}
+			out.println("            |--------|");
+		}
+		out.println("            |////////|");
+		out.println("            |////////|");
+		if (ST == SB)
+			out.println("            |--------|          (stack is empty)");
+		else {
+			dynamicLink = LB;
+			out.println("      ST--> |////////|");
+			out.println("            |--------|");
+			for (addr = ST - 1; addr >= SB; addr--) {
+				out.print(rightPad(6, addr + ": "));
+				if (addr == SB)
+					out.print("SB--> ");
+				else if (addr == LB)
+					out.print("LB--> ");
+				else
+					out.print("      ");
+				if ((addr == dynamicLink) && (dynamicLink != SB))
+					out.print("|OB="
+							+ leftPad(5, String.valueOf(data[addr])) + "|");
+				else if ((addr == dynamicLink + 1) && (dynamicLink != SB))
+					out.print("|DL="
+							+ leftPad(5, String.valueOf(data[addr])) + "|");
+				else if ((addr == dynamicLink + 2) && (dynamicLink != SB))
+					out.print("|RA="
+							+ leftPad(5, String.valueOf(data[addr])) + "|");
+				else
+					out.print("|"
+							+ leftPad(8, String.valueOf(data[addr])) + "|");
+				out.println("");
+				if (addr == dynamicLink) {
+					out.println("            |--------|");
+					dynamicLink = data[addr + 1];
+				}
+			}
+		}
+		out.println("");
+	}
+
+	private static String leftPad(int len, String s) {
+		int aLen = Math.max(len, s.length());
+		StringBuffer buf = new StringBuffer(s);
+		String r = buf.insert(0, "        ").toString();
+		return r.substring(r.length() - aLen, r.length());
+	}
+
+	private static String rightPad(int len, String s) {
+		int aLen = Math.max(len, s.length());
+		String r = s + "        ";
+		return r.substring(0, aLen);
+	}
+
+	public void showStatus() {
+		// Writes an indication of whether and why the program has terminated.
+		out.println("");
+		out.print("*** ");
+		out.println(describeStatus(status));
+		if (collector != null && collector.getCollections() > 0)
+			out.println("*** " + collector);
+		if (status != halted) {
+			if (debug != null) {
+				int[] stack = callStack();
+				for (int i = 0; i < stack.length; i += 2) {
+					if (debug.method(stack[i]) != null)
+						out.println("***     at " + debug.describe(stack[i]));
+				}
+			}
+			dump();
+		}
+	}
+
+	/**
+	 * Walks the frames on the stack by their dynamic links from LB, as dump
+	 * does
+	 * @return the code address and LB of each frame as pairs, innermost
+	 *         first; for each caller, the address is that of its call
+	 */
+	int[] callStack() {
+		int[] stack = new int[32];
+		int size = 0;
+		int addr = CP;
+		// frames are OB, dynamic link, return address; the outermost is at SB
+		for (int lb = LB; ; addr = data[lb + 2] - 1, lb = data[lb + 1]) {
+			if (size == stack.length)
+				stack = java.util.Arrays.copyOf(stack, 2 * size);
+			stack[size++] = addr;
+			stack[size++] = lb;
+			if (lb <= SB || lb + 2 >= ST || data[lb + 1] >= lb)
+				break;  // the outermost frame, or not a frame after all
+		}
+		return java.util.Arrays.copyOf(stack, size);
+	}
+
+	/** Writes the frames on the stack with their parameters and locals */
+	void printCallStack() {
+		int[] stack = callStack();
+		for (int i = 0; i < stack.length; i += 2) {
+			int addr = stack[i], lb = stack[i + 1];
+			out.println((i == 0 ? "  > " : "    ") + (debug == null ? "@" + addr : debug.describe(addr))
+					+ "   (CP=" + addr + ", LB=" + lb + ")");
+			DebugInfo.Method method = debug == null ? null : debug.method(addr);
+			if (method == null)
+				continue;
+			for (DebugInfo.Local local : method.localsAt(addr)) {
+				int value = data[lb + local.offset];
+				out.println("        " + local.typeName + " " + local.name + " = "
+						+ (local.typeName.equals("boolean") ? String.valueOf(isTrue(value))
+								: value == Machine.nullRep && !local.typeName.equals("int") ? "null"
+								: String.valueOf(value)));
+			}
+		}
+	}
+
+	// GARBAGE COLLECTION STATISTICS, all zero when the heap is not collected
+
+	public int getCollections() {
+		return collector == null ? 0 : collector.getCollections();
+	}
+
+	public long getWordsReclaimed() {
+		return collector == null ? 0 : collector.getWordsReclaimed();
+	}
+
+	public long getTotalPauseNanos() {
+		return collector == null ? 0 : collector.getTotalPauseNanos();
+	}
+
+	public long getMaxPauseNanos() {
+		return collector == null ? 0 : collector.getMaxPauseNanos();
+	}
+
+	/**
+	 * Writes the allocated and live bytes of the last run per allocation
+	 * site and per type, as of where the program stopped
+	 * @throws IllegalStateException if the heap was not profiled
+	 */
+	public void writeHeapProfile(PrintStream out) {
+		if (profiler == null)
+			throw new IllegalStateException("the heap was not profiled");
+		profiler.write(this, out);
+	}
+
+	/**
+	 * Writes the call stacks sampled in the last run as folded stacks, the
+	 * input of flame graph tools
+	 * @throws IllegalStateException if the CPU was not profiled
+	 */
+	public void writeCpuProfile(PrintStream out) {
+		if (cpuProfiler == null)
+			throw new IllegalStateException("the CPU was not profiled");
+		cpuProfiler.writeFolded(out);
+	}
+
+	/**
+	 * Writes the instructions executed in the last run by method and by code
+	 * address, at most limit lines of each
+	 * @throws IllegalStateException if the CPU was not profiled
+	 */
+	public void writeFlatCpuProfile(PrintStream out, int limit) {
+		if (cpuProfiler == null)
+			throw new IllegalStateException("the CPU was not profiled");
+		cpuProfiler.writeFlat(out, limit);
+	}
+
+	/**
+	 * @return the times each sequence of instructions at consecutive code
+	 *         addresses was executed in the last run, by the operations in
+	 *         it, such as "LOAD[LB]; LOADL; ADD"
+	 * @throws IllegalStateException if the CPU was not profiled
+	 */
+	public java.util.Map<String, Long> getInstructionSequences() {
+		if (cpuProfiler == null)
+			throw new IllegalStateException("the CPU was not profiled");
+		return cpuProfiler.sequences();
+	}
+
+	// ALLOCATION STATISTICS of the last run
+
+	/** @return the number of objects and arrays allocated */
+	public long getAllocations() {
+		return allocations;
+	}
+
+	/** @return the heap words taken by the objects and arrays allocated, headers included */
+	public long getWordsAllocated() {
+		return wordsAllocated;
+	}
+
+	/**
+	 * @return a sentence saying whether and why a machine with the given
+	 *         status has terminated
+	 */
+	public static String describeStatus(int status) {
+		switch (status) {
+		case running:
+			return "Program is running.";
+		case halted:
+			return "Program has halted normally.";
+		case failedDataStoreFull:
+			return "Program has failed due to exhaustion of Data Store.";
+		case failedInvalidCodeAddress:
+			return "Program has failed due to an invalid code address.";
+		case failedInvalidInstruction:
+			return "Program has failed due to an invalid instruction.";
+		case failedOverflow:
+			return "Program has failed due to overflow.";
+		case failedZeroDivide:
+			return "Program has failed due to division by zero.";
+		case failedIOError:
+			return "Program has failed due to an IO error.";
+		case failedArrayIndex:
+			return "Program has failed due to an array index error.";
+		case failedNullRef:
+			return "Program has failed due to a null pointer reference.";
+		case failedHeapRef:
+			return "Program has failed due to an invalid Heap reference.";
+		case failedFieldIndex:
+			return "Program has failed due to a field index error.";
+		case failedMethodIndex:
+			return "Program has failed due to an improper method index in CALLD.";
+		case stopped:
+			return "Program was stopped before it halted.";
+		default:
+			return "Machine is in an unknown state.";
+		}
+	}
+
+	// INTERPRETATION
+
+	void checkSpace(int spaceNeeded) {
+		// Signals failure if there is not enough space to expand the stack
+		// by spaceNeeded.
+		if (HB - ST < spaceNeeded)
+			status = failedDataStoreFull;
+	}
+
+	boolean checkHeapSpace(int spaceNeeded) {
+		// Signals failure if there is not enough space to expand the heap by
+		// spaceNeeded, first collecting garbage and then enlarging the data
+		// store when those are enabled.
+		if (spaceNeeded < 0 || (data.length - HT < spaceNeeded && !makeHeapSpace(spaceNeeded)))
+			status = failedDataStoreFull;
+		return (status != running);
+	}
+
+	boolean makeHeapSpace(int spaceNeeded) {
+		if (collector != null && !rawHeapBlocks) {
+			collector.collect(this);
+			// rather than collect again soon, grow when most of the heap is live
+			if (data.length - HT >= spaceNeeded + (data.length - HB) / 4)
+				return true;
+		}
+		return growDataStore(spaceNeeded) || data.length - HT >= spaceNeeded;
+	}
+
+	boolean growDataStore(int spaceNeeded) {
+		// Enlarges the heap segment to at least double its size. Objects keep
+		// their addresses since the heap only ever extends past its top.
+		long needed = (long) HT + spaceNeeded - HB;
+		if (!growHeap || needed > maxHeapSize)
+			return false;
+		long newHeapSize = Math.min(Math.max(2L * (data.length - HB), needed), maxHeapSize);
+		data = java.util.Arrays.copyOf(data, HB + (int) newHeapSize);
+		refs = java.util.Arrays.copyOf(refs, data.length);
+		if (allocSites != null)
+			allocSites = java.util.Arrays.copyOf(allocSites, data.length);
+		return true;
+	}
+
+	boolean invalidHeapRef(int addr) {
+		// if addr is null ptr or outside of heap bounds, sets status to failure
+		if (addr == Machine.nullRep)
+			status = failedNullRef;
+		else if (addr < HB + 2 || addr > HT)
+			status = failedHeapRef;
+		return (status != running);
+	}
+
+	boolean invalidInstance(int r) {
+		// if r is OB and OB holds no object, as in a method called with CALL
+		// or by code that did not pass verification, sets status to failure
+		return r == Machine.Reg.OB.ordinal() && invalidHeapRef(OB);
+	}
+
+	static boolean isTrue(int datum) {
+		// Tests whether the given datum represents true.
+		return (datum == Machine.trueRep);
+	}
+
+	int overflowChecked(long datum) {
+		// Signals failure if the datum is too large to fit into a single word,
+		// otherwise returns the datum as a single word.
+		if ((Machine.minintRep <= datum) && (datum <= Machine.maxintRep))
+			return (int) datum;
+		else {
+			status = failedOverflow;
+			return 0;
+		}
+	}
+
+	static int toInt(boolean b) {
+		return b ? Machine.trueRep : Machine.falseRep;
+	}
+
+	int currentChar;
+
+	int readInt() throws java.io.IOException {
+		int temp = 0;
+		int sign = 1;
+
+		do {
+			currentChar = in.read();
+		} while (Character.isWhitespace((char) currentChar));
+
+		if ((currentChar == '-') || (currentChar == '+'))
+			do {
+				sign = (currentChar == '-') ? -1 : 1;
+				currentChar = in.read();
+			} while ((currentChar == '-') || currentChar == '+');
+
+		if (Character.isDigit((char) currentChar))
+			do {
+				temp = temp * 10 + (currentChar - '0');
+				currentChar = in.read();
+			} while (Character.isDigit((char) currentChar));
+
+		return sign * temp;
+	}
+
+	// Computes an ALU operation on the values at the top of the stack, leaving
+	// an untagged result in their place
+	void operate(Machine.Op operation) {
+		switch (operation) {
+		case NOT:
+			data[ST - 1] = toInt(!isTrue(data[ST - 1]));
+			break;
+		case AND:
+			ST = ST - 1;
+			data[ST - 1] = toInt(isTrue(data[ST - 1]) & isTrue(data[ST]));
+			break;
+		case OR:
+			ST = ST - 1;
+			data[ST - 1] = toInt(isTrue(data[ST - 1]) | isTrue(data[ST]));
+			break;
+		case NEG:
+			data[ST - 1] = overflowChecked(-data[ST - 1]);
+			break;
+		case ADD:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator + data[ST]);
+			break;
+		case SUB:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator - data[ST]);
+			break;
+		case MULT:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator * data[ST]);
+			break;
+		case DIV:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			if (data[ST] != 0)
+				data[ST - 1] = (int) (accumulator / data[ST]);
+			else
+				status = failedZeroDivide;
+			break;
+		case MOD:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			if (data[ST] != 0)
+				data[ST - 1] = (int) (accumulator % data[ST]);
+			else
+				status = failedZeroDivide;
+			break;
+		case LT:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] < data[ST]);
+			break;
+		case LE:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] <= data[ST]);
+			break;
+		case GE:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] >= data[ST]);
+			break;
+		case GT:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] > data[ST]);
+			break;
+		case EQ:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] == data[ST]);
+			break;
+		case NE:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] != data[ST]);
+			break;
+		default:
+			status = failedInvalidInstruction;
+			return;
+		}
+		refs[ST - 1] = 0;
+	}
+
+	// Invoke primitive operation with argument(s) on the stack
+	// primitives are static and are not supplied an instance on the stack.
+	void callPrimitive(int id) {
+
+		int addr, size, index;
+		char ch;
+
+		Machine.Prim prim = Machine.intToPrim[id];
+		switch (prim) {
+		case id:
+			break; // nothing to be done
+		case not:
+		case and:
+		case or:
+		case neg:
+		case add:
+		case sub:
+		case mult:
+		case div:
+		case mod:
+		case lt:
+		case le:
+		case ge:
+		case gt:
+		case eq:
+		case ne:
+			operate(Machine.aluOp(prim));
+			break;
+		case succ:
+			data[ST - 1] = overflowChecked(data[ST - 1] + 1);
+			break;
+		case pred:
+			data[ST - 1] = overflowChecked(data[ST - 1] - 1);
+			break;
+		case eol:
+			data[ST] = toInt(currentChar == '\n');
+			ST = ST + 1;
+			break;
+		case eof:
+			data[ST] = toInt(currentChar == -1);
+			ST = ST + 1;
+			break;
+		case get:
+			ST = ST - 1;
+			addr = data[ST];
+			try {
+				currentChar = in.read();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			data[addr] = (int) currentChar;
+			refs[addr] = 0;
+			break;
+		case put:
+			ST = ST - 1;
+			ch = (char) data[ST];
+			out.print(ch);
+			break;
+		case geteol:
+			try {
+				while ((currentChar = in.read()) != '\n')
+					;
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case puteol:
+			out.println("");
+			break;
+		case getint:
+			ST = ST - 1;
+			addr = data[ST];
+			try {
+				accumulator = readInt();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			data[addr] = (int) accumulator;
+			refs[addr] = 0;
+			break;
+		case putint:
+			ST = ST - 1;
+			accumulator = data[ST];
+			out.print(accumulator);
+			break;
+		// output with prefix for tester
+		case putintnl:
+			ST = ST - 1;
+			accumulator = data[ST];
+			out.print(">>> " + accumulator + "\n");
+			break;
+		case alloc:
+			size = data[ST - 1];
+			if (checkHeapSpace(size))
+				break;
+			data[ST - 1] = HT;
+			HT = HT + size;
+			rawHeapBlocks = true;
+			break;
+		case dispose:
+			ST = ST - 1; // no action taken at present
+			break;
+		case newobj:
+			// ..., class obj addr, number of fields ==> ..., new obj addr
+			size = data[ST - 1] + 2; // number of fields + 2 word descriptor
+			if (size < 2) {
+				status = failedFieldIndex;
+				break;
+			}
+			if (checkHeapSpace(size))
+				break;
+			addr = HT;
+			HT = HT + size;          // reserve space, whose fields are zero already
+			data[addr] = data[ST - 2]; // set class object addr
+			data[addr + 1] = size - 2; // set size of object
+			data[ST - 2] = addr + 2; // addr of new object instance, returned on stack
+			ST = ST - 1;             // net effect of pop 2 args, push 1 result
+			tagScalars(addr);
+			refs[ST - 1] = Collector.REF;
+			allocated(addr, size);
+			break;
+		case newarr:
+			// ..., number of elements ==> ..., new int[] addr
+			size = data[ST - 1] + 2;  // array  + 2 word descriptor
+			if (size < 2) {
+				status = failedArrayIndex; // negative array size
+				break;
+			}
+			if (checkHeapSpace(size))
+				break;
+			addr = HT;
+			HT = HT + size;           // elements are zero already
+			data[addr] = -2;          // tag for array
+			data[addr + 1] = size - 2; // size of array
+			data[ST - 1] = addr + 2;  // addr of array instance, returned on stack
+			tagScalars(addr);
+			refs[ST - 1] = Collector.REF;
+			allocated(addr, size);
+			break;
+		case arraylen:
+			// ..., array addr a ==> ... , array.length
+			addr = data[ST-1];
+			if (invalidHeapRef(addr))
+				break;                   // invalid heap address
+			if (data[addr - 2] != -2) {
+				status = failedHeapRef;  // not tagged as array in heap
+				break;
+			}
+			data[ST-1] = data[addr - 1]; // return array length field
+			break;
+		case arrayref:
+			// ..., array addr a, element index i ==> ..., a[i]
+			addr = data[ST - 2];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 1];
+			if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+				status = failedArrayIndex;
+				break;
+			}
+			data[ST - 2] = data[addr + index];  // result element, returned on stack
+			refs[ST - 2] = refs[addr + index];
+			ST = ST - 1;                        // pop two args, return one result
+			break;
+		case arrayupd:
+			// ..., array addr a, element index i, new value v ==> ...
+			// and a[i] := v
+			addr = data[ST - 3];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 2];
+			if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+				status = failedArrayIndex;
+				break;
+			}
+			data[addr + index] = data[ST - 1]; // update array element
+			refs[addr + index] = refs[ST - 1];
+			ST = ST - 3;                       // pop 3 args, return no result
+			break;
+		case fieldref:
+			// ..., obj addr a, field index i ==> ..., value of ith field of a
+			addr = data[ST - 2];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 1];
+			if (index < 0 || index >= data[addr - 1]) {
+				status = failedFieldIndex;
+				break;
+			}
+			data[ST - 2] = data[addr + index];   // field to stack top
+			refs[ST - 2] = refs[addr + index];
+			ST = ST - 1;                         // pop two args, return one result
+			break;
+		case fieldupd:
+			// ..., obj addr a, field index i, new value v ==> ...
+			// and a.i := v
+			addr = data[ST - 3];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 2];
+			if (index < 0 || index >= data[addr - 1]) {
+				status = failedFieldIndex;	
+				break;	
+			}	
+			data[addr + index] = data[ST - 1];	// update field to new value
+			refs[addr + index] = refs[ST - 1];
+			ST = ST - 3;						// pop 3 args, return no result
+			break;
+		}
+
+		// every other primitive that leaves a result leaves an integer
+		switch (prim) {
+		case id:
+		case newobj:
+		case newarr:
+		case arrayref:
+		case fieldref:
+		case put:
+		case geteol:
+		case puteol:
+		case getint:
+		case get:
+		case putint:
+		case putintnl:
+		case dispose:
+		case arrayupd:
+		case fieldupd:
+			break;
+		default:
+			if (ST > SB)
+				refs[ST - 1] = 0;
+		}
+	}
+
+	void allocated(int header, int size) {
+		// Counts the instance just allocated by the primitive at CP.
+		allocations++;
+		wordsAllocated += size;
+		if (profiler != null) {
+			allocSites[header] = CP - Machine.CB;
+			profiler.allocated(CP - Machine.CB, size);
+		}
+	}
+
+	void tagScalars(int header) {
+		// Tags the header of the instance just allocated by the primitive at
+		// CP when the type map says it can hold no references.
+		if (siteTags != null && CP >= Machine.CB && CP < CT)
+			refs[header] = siteTags[CP - Machine.CB];
+	}
+
+	void interpretOneOperation() {
+		if (stopping) {
+			status = stopped;
+			return;
+		}
+		// Fetch instruction ...
+		int word = code[CP * Machine.instrWords];
+		int d = code[CP * Machine.instrWords + 1];
+		// Decode instruction ...
+		int op = Machine.opOf(word);
+		int r = Machine.rOf(word);
+		int n = Machine.nOf(word);
+		int addr;
+		// Execute instruction ...
+
+		if (op >= Machine.intToOp.length) {
+			status = failedInvalidInstruction;
+			return;
+		}
+		Machine.Op operation = Machine.intToOp[op];
+
+		switch (operation) {
+		case LOAD:
+			if (invalidInstance(r))
+				break;
+			addr = d + content(r);
+			checkSpace(1);
+			data[ST] = data[addr];
+			refs[ST] = refs[addr];
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case LOADA:
+			addr = d + content(r);
+			checkSpace(1);
+			data[ST] = addr;
+			refs[ST] = (r == Machine.Reg.OB.ordinal() && d == 0) ? Collector.REF : 0; // this
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case LOADI:
+			ST = ST - 1;
+			addr = data[ST];
+			checkSpace(1);
+			data[ST] = data[addr];
+			refs[ST] = refs[addr];
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case LOADL:
+			checkSpace(1);
+			data[ST] = d;
+			refs[ST] = 0;
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case STORE:
+			if (invalidInstance(r))
+				break;
+			addr = d + content(r);
+			ST = ST - 1;
+			data[addr] = data[ST];
+			refs[addr] = refs[ST];
+			CP = CP + 1;
+			break;
+		case STOREI:
+			ST = ST - 1;
+			addr = data[ST];
+			ST = ST - 1;
+			data[addr] = data[ST];
+			refs[addr] = refs[ST];
+			CP = CP + 1;
+			break;
+			
+		case CALL:
+			// call static method, including primitives
+			// arguments are on stack
+			addr = d + content(r);      // effective address
+			if (addr >= Machine.PB) {
+				callPrimitive(addr - Machine.PB);
+				CP = CP + 1;
+			} else {
+				// static method in code segment, no instance addr on stack
+				checkSpace(3);
+				data[ST] = OB;         // save caller OB in callee frame
+				data[ST + 1] = LB;     // save caller LB in callee frame (dynamic link)
+				data[ST + 2] = CP + 1; // save caller return address in callee frame
+				refs[ST] = Collector.REF;
+				refs[ST + 1] = refs[ST + 2] = 0;
+				OB = Machine.nullRep;  // set callee OB (null since no instance) 
+				LB = ST;               // set LB = start of callee frame
+				ST = ST + 3;           // set ST = end of callee frame
+				CP = addr;             // execution resumes at addr specified in CALL inst
+			}
+			break;
+			
+		case CALLI:
+			// call instance method
+			// arguments on stack, followed by instance address
+			addr = d + content(r);      // effective address
+			if (addr >= CT) {
+				// no instance methods outside of code segment
+				status = failedInvalidInstruction;
+				break;
+			}
+			// instance address is last arg on stack and is overwritten by frame,
+			// and must be an object, as OB addresses its fields unchecked
+			if (invalidHeapRef(data[ST - 1]))
+				break;
+			checkSpace(2);
+			temp = data[ST - 1];   // save instance address temporarily
+			data[ST - 1] = OB;     // save caller OB in callee frame
+			data[ST] = LB;         // save caller LB in callee frame (dynamic link)
+			data[ST + 1] = CP + 1; // save caller return address in callee frame
+			refs[ST - 1] = Collector.REF;
+			refs[ST] = refs[ST + 1] = 0;
+			OB = temp;             // set OB for callee
+			LB = ST - 1;           // set LB = start of callee frame
+			ST = ST + 2;           // set ST = end of callee frame 
+			CP = addr;             // execution resumes at addr specified in CALL inst
+			break;
+			
+		case RETURN: 
+			// d = number of method args (does not include instance addr for CALLI)
+			// n = size of result (0 or 1)
+			if (n < 0 || n > 1) {
+				status = failedInvalidInstruction;
+				break;
+			}
+			addr = LB - d;          // addr of caller args
+			OB = data[LB];          // restore caller OB, LB, CP
+			CP = data[LB + 2];
+			LB = data[LB + 1];
+			if (n == 1) {
+				data[addr] = data[ST - 1];  // return value if any
+				refs[addr] = refs[ST - 1];
+			}
+			ST = addr + n;          // caller stack top
+			break;
+			
+		case CALLD: 
+			// dynamic method dispatch of method with index d (origin 0)
+			// arguments on stack, followed by instance addr
+			{
+				addr = data[ST - 1];    // instance addr
+				if (invalidHeapRef(addr))
+					break;
+				int classDescAddr = data[addr - 2];
+				if (classDescAddr >= ST || classDescAddr <= SB || d >= data[classDescAddr + 1] || d < 0) {
+					status = failedMethodIndex;
+					break;
+				}
+				ST = ST - 1;
+				checkSpace(3);
+				data[ST] = OB;
+				data[ST + 1] = LB;
+				data[ST + 2] = CP + 1;
+				refs[ST] = Collector.REF;
+				refs[ST + 1] = refs[ST + 2] = 0;
+				OB = addr;
+				LB = ST;
+				ST = ST + 3;
+				CP = data[classDescAddr + 2 + n];
+			}
+			break;
+		case PUSH: // push d elements on stack
+			checkSpace(d);
+			if (status == running && d > 0)
+				java.util.Arrays.fill(refs, ST, ST + d, (byte) 0);
+			ST = ST + d;
+			CP = CP + 1;
+			break;
+		case POP: // pop d elements off stack
+			ST = ST - d;
+			CP = CP + 1;
+			break;
+		case JUMP:
+			CP = d + content(r);
+			break;
+		case JUMPI:
+			ST = ST - 1;
+			CP = data[ST];
+			break;
+		case JUMPIF:
+			ST = ST - 1;
+			if (data[ST] == n)
+				CP = d + content(r);
+			else
+				CP = CP + 1;
+			break;
+		case NOT:
+		case AND:
+		case OR:
+		case NEG:
+		case ADD:
+		case SUB:
+		case MULT:
+		case DIV:
+		case MOD:
+		case LT:
+		case LE:
+		case GE:
+		case GT:
+		case EQ:
+		case NE:
+			operate(operation);
+			CP = CP + 1;
+			break;
+		case LOAD2:
+			checkSpace(2);
+			if (status != running || invalidInstance(r))
+				break;
+			addr = d + content(r);
+			data[ST] = data[addr];
+			refs[ST] = refs[addr];
+			addr = Machine.signedNOf(word) + content(r);
+			data[ST + 1] = data[addr];
+			refs[ST + 1] = refs[addr];
+			ST = ST + 2;
+			CP = CP + 1;
+			break;
+		case INCR:
+			if (invalidInstance(r))
+				break;
+			addr = d + content(r);
+			temp = overflowChecked((long) data[addr] + Machine.signedNOf(word));
+			if (status == running) {
+				data[addr] = temp;
+				refs[addr] = 0;
+			}
+			CP = CP + 1;
+			break;
+		case OPL:
+			if (!Machine.isBinaryAluOp(n)) {
+				status = failedInvalidInstruction;
+				break;
+			}
+			checkSpace(1);
+			if (status != running)
+				break;
+			data[ST] = d;
+			ST = ST + 1;
+			operate(Machine.intToOp[n]);
+			CP = CP + 1;
+			break;
+		case JUMPCMP:
+			if (!Machine.isComparison(n)) {
+				status = failedInvalidInstruction;
+				break;
+			}
+			operate(Machine.intToOp[n]);
+			ST = ST - 1;
+			if (isTrue(data[ST]))
+				CP = d + content(r);
+			else
+				CP = CP + 1;
+			break;
+		case LOADF:
+			// ..., obj addr a ==> ..., value of field d of a
+			addr = data[ST - 1];
+			if (!invalidHeapRef(addr)) {
+				if (d < 0 || d >= data[addr - 1])
+					status = failedFieldIndex;
+				else {
+					data[ST - 1] = data[addr + d];
+					refs[ST - 1] = refs[addr + d];
+				}
+			}
+			CP = CP + 1;
+			break;
+		case STOREF:
+			// ..., value v, obj addr a ==> ... and a.d := v
+			addr = data[ST - 1];
+			if (!invalidHeapRef(addr)) {
+				if (d < 0 || d >= data[addr - 1])
+					status = failedFieldIndex;
+				else {
+					data[addr + d] = data[ST - 2];
+					refs[addr + d] = refs[ST - 2];
+					ST = ST - 2;
+				}
+			}
+			CP = CP + 1;
+			break;
+		case LOADX:
+			callPrimitive(Machine.Prim.arrayref.ordinal());
+			CP = CP + 1;
+			break;
+		case STOREX:
+			callPrimitive(Machine.Prim.arrayupd.ordinal());
+			CP = CP + 1;
+			break;
+		case HALT:
+			if (n > 0) {
+				// halt n > 0 --> snapshot machine state and continue execution
+				dump();
+				CP = CP + 1;
+			} else
+				status = halted;
+			break;
+		}
+
+		if ((CP < CB) || (CP >= CT))
+			status = failedInvalidCodeAddress;
+
+		if (breakpoints.indexOf(CP) != -1) {
+			debuggerStatus = DebuggerStatus.PAUSED;
+			out.println("Breakpoint hit: " + sourceLines.get(CP));
+		}
+	}
+
+	void initMachine() {
+		allocateDataStore();
+		// Initialize registers ...
+		ST = SB;
+		HT = HB;
+		LB = SB;
+		CP = CB;
+		OB = -1; // invalid instance addr
+		status = running;
+		stopping = false;
+		allocations = wordsAllocated = 0;
+	}
+
+	int heapRefStatus(int addr, int ht) {
+		// status for accessing heap address addr, as set by invalidHeapRef
+		if (addr == Machine.nullRep)
+			return failedNullRef;
+		else if (addr < HB + 2 || addr > ht)
+			return failedHeapRef;
+		return running;
+	}
+
+	// NEWOBJ and NEWARR fall through to PRIM when they can not allocate inline
+	@SuppressWarnings("fallthrough")
+	void runDecoded(DecodedProgram program) {
+		// Runs from CP, which is CB, until the machine stops, keeping the
+		// registers in locals and dispatching on the decoded operations.
+		// Anything decoded as SLOW is handed to interpretOneOperation, and
+		// breakpoints are never checked. Stack space is checked on entry and at
+		// each call for all the code will push until it returns, so pushes need
+		// no check of their own. Jumps and calls, the only ways to run on
+		// indefinitely, check whether stop has been called.
+		final int[] ops = program.op, ns = program.n, ds = program.d, fields = program.field;
+		final int hb = HB, ct = CT;
+		final boolean profiling = profiler != null;
+		int[] data = this.data;
+		byte[] refs = this.refs;
+		int cp = CP, st = ST, lb = LB, ob = OB;
+		int addr, index, size;
+		long result;
+
+		if (hb - st < program.entrySpace) {
+			status = failedDataStoreFull;
+			return;
+		}
+
+		loop: for (;;) {
+			int d = ds[cp];
+			switch (ops[cp]) {
+			case DecodedProgram.LOAD_ABS:
+				refs[st] = refs[d];
+				data[st++] = data[d];
+				cp++;
+				break;
+			case DecodedProgram.LOAD_LB:
+				refs[st] = refs[d + lb];
+				data[st++] = data[d + lb];
+				cp++;
+				break;
+			case DecodedProgram.LOAD_OB:
+				refs[st] = refs[d + ob];
+				data[st++] = data[d + ob];
+				cp++;
+				break;
+			case DecodedProgram.LOAD_ST:
+				data[st] = data[d + st];
+				refs[st] = refs[d + st];
+				st++;
+				cp++;
+				break;
+			case DecodedProgram.LOADA_ABS:
+			case DecodedProgram.LOADL:
+				refs[st] = 0;
+				data[st++] = d;
+				cp++;
+				break;
+			case DecodedProgram.LOADA_LB:
+				refs[st] = 0;
+				data[st++] = d + lb;
+				cp++;
+				break;
+			case DecodedProgram.LOADA_OB:
+				refs[st] = d == 0 ? Collector.REF : 0; // this
+				data[st++] = d + ob;
+				cp++;
+				break;
+			case DecodedProgram.LOADA_ST:
+				data[st] = d + st;
+				refs[st] = 0;
+				st++;
+				cp++;
+				break;
+			case DecodedProgram.LOADI:
+				addr = data[st - 1];
+				data[st - 1] = data[addr];
+				refs[st - 1] = refs[addr];
+				cp++;
+				break;
+			case DecodedProgram.STORE_ABS:
+				data[d] = data[--st];
+				refs[d] = refs[st];
+				cp++;
+				break;
+			case DecodedProgram.STORE_LB:
+				data[d + lb] = data[--st];
+				refs[d + lb] = refs[st];
+				cp++;
+				break;
+			case DecodedProgram.STORE_OB:
+				data[d + ob] = data[--st];
+				refs[d + ob] = refs[st];
+				cp++;
+				break;
+			case DecodedProgram.STORE_ST:
+				addr = d + st;
+				data[addr] = data[--st];
+				refs[addr] = refs[st];
+				cp++;
+				break;
+			case DecodedProgram.STOREI:
+				addr = data[st - 1];
+				data[addr] = data[st - 2];
+				refs[addr] = refs[st - 2];
+				st = st - 2;
+				cp++;
+				break;
+			case DecodedProgram.CALL:
+				if (hb - st < ns[cp]) { status = failedDataStoreFull; break loop; }
+				if (stopping) { status = stopped; break loop; }
+				data[st] = ob;         // save caller OB in callee frame
+				data[st + 1] = lb;     // save caller LB in callee frame (dynamic link)
+				data[st + 2] = cp + 1; // save caller return address in callee frame
+				refs[st] = Collector.REF;
+				refs[st + 1] = refs[st + 2] = 0;
+				ob = Machine.nullRep;
+				lb = st;
+				st = st + 3;
+				cp = d;
+				break;
+			case DecodedProgram.CALLI:
+				if (hb - st < ns[cp]) { status = failedDataStoreFull; break loop; }
+				if (stopping) { status = stopped; break loop; }
+				addr = data[st - 1];   // instance address, overwritten by frame
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				// the callee addresses fields of OB unchecked, up to fields[cp]
+				if (fields[cp] >= data[addr - 1]) { status = failedFieldIndex; break loop; }
+				data[st - 1] = ob;
+				data[st] = lb;
+				data[st + 1] = cp + 1;
+				refs[st - 1] = Collector.REF;
+				refs[st] = refs[st + 1] = 0;
+				ob = addr;
+				lb = st - 1;
+				st = st + 2;
+				cp = d;
+				break;
+			case DecodedProgram.RETURN:
+				index = ns[cp];        // size of result (0 or 1)
+				addr = lb - d;         // addr of caller args
+				ob = data[lb];         // restore caller OB, LB, CP
+				cp = data[lb + 2];
+				lb = data[lb + 1];
+				if (index == 1) {
+					data[addr] = data[st - 1];  // return value if any
+					refs[addr] = refs[st - 1];
+				}
+				st = addr + index;     // caller stack top
+				if (cp < CB || cp >= ct) { status = failedInvalidCodeAddress; break loop; }
+				break;
+			case DecodedProgram.PUSH:
+				java.util.Arrays.fill(refs, st, st + d, (byte) 0);
+				st = st + d;
+				cp++;
+				break;
+			case DecodedProgram.POP:
+				st = st - d;
+				cp++;
+				break;
+			case DecodedProgram.JUMP:
+				cp = d;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.JUMPI:
+				cp = data[--st];
+				if (cp < CB || cp >= ct) { status = failedInvalidCodeAddress; break loop; }
+				break;
+			case DecodedProgram.JUMPIF:
+				cp = (data[--st] == ns[cp]) ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.NOT:
+				data[st - 1] = toInt(!isTrue(data[st - 1]));
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.AND:
+				st--;
+				data[st - 1] = toInt(isTrue(data[st - 1]) & isTrue(data[st]));
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.OR:
+				st--;
+				data[st - 1] = toInt(isTrue(data[st - 1]) | isTrue(data[st]));
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.NEG:
+				data[st - 1] = -data[st - 1];
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.ADD:
+			case DecodedProgram.SUB:
+			case DecodedProgram.MULT:
+				st--;
+				result = ops[cp] == DecodedProgram.ADD ? (long) data[st - 1] + data[st]
+						: ops[cp] == DecodedProgram.SUB ? (long) data[st - 1] - data[st]
+						: (long) data[st - 1] * data[st];
+				cp++;
+				if (result != (int) result) {
+					data[st - 1] = 0;
+					status = failedOverflow;
+					break loop;
+				}
+				data[st - 1] = (int) result;
+				refs[st - 1] = 0;
+				break;
+			case DecodedProgram.DIV:
+			case DecodedProgram.MOD:
+				st--;
+				if (data[st] == 0) {
+					cp++;
+					status = failedZeroDivide;
+					break loop;
+				}
+				data[st - 1] = (int) (ops[cp] == DecodedProgram.DIV ? (long) data[st - 1] / data[st]
+						: (long) data[st - 1] % data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.LT:
+				st--;
+				data[st - 1] = toInt(data[st - 1] < data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.LE:
+				st--;
+				data[st - 1] = toInt(data[st - 1] <= data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.GE:
+				st--;
+				data[st - 1] = toInt(data[st - 1] >= data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.GT:
+				st--;
+				data[st - 1] = toInt(data[st - 1] > data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.EQ:
+				st--;
+				data[st - 1] = toInt(data[st - 1] == data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.NE:
+				st--;
+				data[st - 1] = toInt(data[st - 1] != data[st]);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.LOAD2_LB:
+				refs[st] = refs[d + lb];
+				data[st++] = data[d + lb];
+				refs[st] = refs[ns[cp] + lb];
+				data[st++] = data[ns[cp] + lb];
+				cp++;
+				break;
+			case DecodedProgram.LOAD2_OB:
+				refs[st] = refs[d + ob];
+				data[st++] = data[d + ob];
+				refs[st] = refs[ns[cp] + ob];
+				data[st++] = data[ns[cp] + ob];
+				cp++;
+				break;
+			case DecodedProgram.INCR_ABS:
+			case DecodedProgram.INCR_LB:
+			case DecodedProgram.INCR_OB:
+				addr = ops[cp] == DecodedProgram.INCR_LB ? d + lb : ops[cp] == DecodedProgram.INCR_OB ? d + ob : d;
+				result = (long) data[addr] + ns[cp];
+				cp++;
+				if (result != (int) result) { status = failedOverflow; break loop; }
+				data[addr] = (int) result;
+				refs[addr] = 0;
+				break;
+			case DecodedProgram.ADD_L:
+			case DecodedProgram.SUB_L:
+			case DecodedProgram.MULT_L:
+				result = ops[cp] == DecodedProgram.ADD_L ? (long) data[st - 1] + d
+						: ops[cp] == DecodedProgram.SUB_L ? (long) data[st - 1] - d
+						: (long) data[st - 1] * d;
+				cp++;
+				if (result != (int) result) {
+					data[st - 1] = 0;
+					status = failedOverflow;
+					break loop;
+				}
+				data[st - 1] = (int) result;
+				refs[st - 1] = 0;
+				break;
+			case DecodedProgram.LT_L:
+				data[st - 1] = toInt(data[st - 1] < d);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.LE_L:
+				data[st - 1] = toInt(data[st - 1] <= d);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.GE_L:
+				data[st - 1] = toInt(data[st - 1] >= d);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.GT_L:
+				data[st - 1] = toInt(data[st - 1] > d);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.EQ_L:
+				data[st - 1] = toInt(data[st - 1] == d);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.NE_L:
+				data[st - 1] = toInt(data[st - 1] != d);
+				refs[st - 1] = 0;
+				cp++;
+				break;
+			case DecodedProgram.JUMP_LT:
+				st = st - 2;
+				cp = data[st] < data[st + 1] ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.JUMP_LE:
+				st = st - 2;
+				cp = data[st] <= data[st + 1] ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.JUMP_GE:
+				st = st - 2;
+				cp = data[st] >= data[st + 1] ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.JUMP_GT:
+				st = st - 2;
+				cp = data[st] > data[st + 1] ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.JUMP_EQ:
+				st = st - 2;
+				cp = data[st] == data[st + 1] ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.JUMP_NE:
+				st = st - 2;
+				cp = data[st] != data[st + 1] ? d : cp + 1;
+				if (stopping) { status = stopped; break loop; }
+				break;
+			case DecodedProgram.ARRAYLEN:
+				addr = data[st - 1];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (data[addr - 2] != -2) { status = failedHeapRef; break loop; }
+				data[st - 1] = data[addr - 1];
+				refs[st - 1] = 0;
+				break;
+			case DecodedProgram.ARRAYREF:
+				addr = data[st - 2];
+				index = data[st - 1];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+					status = failedArrayIndex;
+					break loop;
+				}
+				data[st - 2] = data[addr + index];
+				refs[st - 2] = refs[addr + index];
+				st--;
+				break;
+			case DecodedProgram.ARRAYUPD:
+				addr = data[st - 3];
+				index = data[st - 2];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+					status = failedArrayIndex;
+					break loop;
+				}
+				data[addr + index] = data[st - 1];
+				refs[addr + index] = refs[st - 1];
+				st = st - 3;
+				break;
+			case DecodedProgram.FIELDREF:
+				addr = data[st - 2];
+				index = data[st - 1];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (index < 0 || index >= data[addr - 1]) { status = failedFieldIndex; break loop; }
+				data[st - 2] = data[addr + index];
+				refs[st - 2] = refs[addr + index];
+				st--;
+				break;
+			case DecodedProgram.FIELDUPD:
+				addr = data[st - 3];
+				index = data[st - 2];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (index < 0 || index >= data[addr - 1]) { status = failedFieldIndex; break loop; }
+				data[addr + index] = data[st - 1];
+				refs[addr + index] = refs[st - 1];
+				st = st - 3;
+				break;
+			case DecodedProgram.LOADF:
+				addr = data[st - 1];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (d >= data[addr - 1]) { status = failedFieldIndex; break loop; }
+				data[st - 1] = data[addr + d];
+				refs[st - 1] = refs[addr + d];
+				break;
+			case DecodedProgram.STOREF:
+				addr = data[st - 1];
+				cp++;
+				if ((status = heapRefStatus(addr, HT)) != running)
+					break loop;
+				if (d >= data[addr - 1]) { status = failedFieldIndex; break loop; }
+				data[addr + d] = data[st - 2];
+				refs[addr + d] = refs[st - 2];
+				st = st - 2;
+				break;
+			case DecodedProgram.NEWOBJ:
+			case DecodedProgram.NEWARR:
+				// ..., [class obj addr,] number of fields or elements ==> ..., new instance addr
+				size = data[st - 1] + 2;
+				addr = HT;
+				if (size >= 2 && data.length - addr >= size && !profiling) {
+					HT = addr + size; // the words taken are zero already
+					if (ops[cp] == DecodedProgram.NEWOBJ)
+						data[addr] = data[--st - 1];
+					else
+						data[addr] = -2;
+					data[addr + 1] = size - 2;
+					if (siteTags != null)
+						refs[addr] = siteTags[cp];
+					data[st - 1] = addr + 2;
+					refs[st - 1] = Collector.REF;
+					allocations++;
+					wordsAllocated += size;
+					cp++;
+					break;
+				}
+				// otherwise callPrimitive makes room on the heap or fails, or
+				// records the allocation site
+			case DecodedProgram.PRIM:
+				CP = cp; ST = st; OB = ob;
+				callPrimitive(d);
+				st = ST; ob = OB;       // the collector may have moved this
+				data = this.data;       // the heap may have grown
+				refs = this.refs;
+				cp++;
+				if (status != running)
+					break loop;
+				break;
+			case DecodedProgram.END:
+				status = failedInvalidCodeAddress;
+				break loop;
+			default: // SLOW
+				CP = cp; ST = st; LB = lb; OB = ob;
+				interpretOneOperation();
+				cp = CP; st = ST; lb = LB; ob = OB;
+				data = this.data;
+				refs = this.refs;
+				if (status != running)
+					break loop;
+				break;
+			}
+		}
+		CP = cp; ST = st; LB = lb; OB = ob;
+	}
+
+	void interpretProgram() {
+		// Runs the program in code store.
+		initMachine();
+		if (cpuProfiler != null) {
+			// one instruction at a time, so that each can be counted
+			do {
+				cpuProfiler.executing(this);
+				interpretOneOperation();
+			} while (status == running);
+			return;
+		}
+		runDecoded(decoded());
+	}
+
+	/**
+	 * Verifies the program, the first time it is called or the program runs
+	 * @return null if the program passed, and runs without the checks that
+	 *         makes redundant, or else the first problem found
+	 * @see Verifier
+	 */
+	public String verify() {
+		return decoded().problem;
+	}
+
+	/** @return the decoded program, decoded on first use */
+	private synchronized DecodedProgram decoded() {
+		if (decoded == null)
+			decoded = DecodedProgram.decode(code, CT, types);
+		return decoded;
+	}
+
+	void runProgramFromStart() {
+		initMachine();
+		continueProgram();
+	}
+
+	void continueProgram() {
+		debuggerStatus = DebuggerStatus.RUNNING;
+		do {
+			interpretOneOperation();
+		} while (status == running && debuggerStatus == DebuggerStatus.RUNNING);
+	}
+
+	void printHelp() {
+		String[] help = {
+				"p or print:",
+				"     print entire machine state",
+				"l or list [offset] [size]:",
+				"     print the instructions around CP + offset, with size lines on either side",
+				"     offset = 0 and size = 2 by default",
+				"b or break [address]:",
+				"     set a breakpoint at address",
+				"     address = CP by default",
+				"del:",
+				"     delete one or more breakpoints",
+				"n or next:",
+				"     execute one instruction",
+				"c or continue:",
+				"     continue running the program from current position, until next breakpoint or completion",
+				"r or run:",
+				"     run the program from start, until next breakpoint or completion",
+				"i or info:", "     list the current breakpoints",
+				"w or where:",
+				"     print the call stack, with the parameters and locals of each method",
+				"q, quit or <EOF>:", "     quit the debugger",
+				"Simply press enter to repeat the last command", "? or help:",
+				"     print this help" };
+
+		for (String line : help) {
+			out.println("  " + line);
+		}
+	}
+
+	void debugProgram() {
+		initMachine();
+
+		BufferedReader inputReader = new BufferedReader(new InputStreamReader(
+				in));
+
+		String lastCommand = "";
+
+		while (true) {
+			out.print("\n: ");
+			String inputLine;
+
+			try {
+				inputLine = inputReader.readLine();
+			} catch (IOException e) {
+				return;
+			}
+
+			if (inputLine == null)
+				return;
+
+			Scanner scanner = new Scanner(inputLine);
+			String command = (scanner.hasNext() ? scanner.next() : lastCommand);
+			lastCommand = command;
+
+			if (command.equals("?") || command.equals("help")) {
+				printHelp();
+			} else if (command.equalsIgnoreCase("p")
+					|| command.equalsIgnoreCase("print")) {
+				dump();
+			} else if (command.equalsIgnoreCase("l")
+					|| command.equalsIgnoreCase("list")) {
+				int offset = 0, size = 2;
+				if (scanner.hasNextInt())
+					offset = scanner.nextInt();
+				if (scanner.hasNextInt())
+					size = scanner.nextInt();
+
+				for (int i = CP + offset - size; i <= CP + offset + size; ++i) {
+					if (i >= 0 && i < sourceLines.size())
+						out.println((i == CP ? " >" : "  ")
+								+ sourceLines.get(i));
+				}
+			} else if (command.equalsIgnoreCase("b")
+					|| command.equalsIgnoreCase("break")) {
+				int addr = scanner.hasNextInt() ? scanner.nextInt() : CP;
+				if (!breakpoints.contains(addr))
+					breakpoints.add(addr);
+				out.println("Added breakpoint at "
+						+ sourceLines.get(addr));
+			} else if (command.equalsIgnoreCase("del")) {
+				while (scanner.hasNextInt()) {
+					int addr = scanner.nextInt(), idx = breakpoints
+							.indexOf(addr);
+					if (idx != -1) {
+						breakpoints.remove(idx);
+					} else {
+						out.println("No breakpoint at " + addr);
+					}
+				}
+			} else if (command.equalsIgnoreCase("n")
+					|| command.equalsIgnoreCase("next")) {
+				if (status == running) {
+					interpretOneOperation();
+				} else {
+					out.println("Program is not running");
+				}
+			} else if (command.equalsIgnoreCase("c")
+					|| command.equalsIgnoreCase("continue")) {
+				continueProgram();
+			} else if (command.equalsIgnoreCase("r")
+					|| command.equalsIgnoreCase("run")) {
+				runProgramFromStart();
+			} else if (command.equalsIgnoreCase("i")
+					|| command.equalsIgnoreCase("info")) {
+				out.println("Breakpoints:");
+				for (int b : breakpoints) {
+					out.println("\t" + sourceLines.get(b));
+				}
+			} else if (command.equalsIgnoreCase("w")
+					|| command.equalsIgnoreCase("where")) {
+				printCallStack();
+			} else if (command.equalsIgnoreCase("q")
+					|| command.equalsIgnoreCase("quit")) {
+				scanner.close();
+				return;
+			} else {
+				out.println("Unknown command '" + command
+						+ "'. Type 'help' for a list of commands");
+			}
+			scanner.close();
+		}
+	}
+
+	// RUNNING
+
+	/**
+	 * Runs the program from the start until it halts or fails
+	 * @return the machine status, halted if the program terminated normally
+	 */
+	public int run() {
+		interpretProgram();
+		return status;
+	}
+
+	/**
+	 * Asks a running machine, from any thread, to stop at its next jump or
+	 * call; run then returns stopped. Later runs are not affected.
+	 */
+	public void stop() {
+		stopping = true;
+	}
+
+	@Override
+	public Integer call() {
+		return run();
+	}
+
+	/**
+	 * Runs the interactive debugger, reading commands from the machine input
+	 * @param sourceLines  disassembled program, one line per instruction
+	 */
+	public void debug(List<String> sourceLines) {
+		this.sourceLines = sourceLines;
+		debugProgram();
+	}
+}
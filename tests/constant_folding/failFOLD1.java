@@ -0,0 +1,7 @@
+// an overflowing constant expression is not folded, so it still fails when it runs
+class Test {
+  public static void main(String[] args) {
+    int x = 2147483647 + 1;
+    System.out.println(-1);
+  }
+}
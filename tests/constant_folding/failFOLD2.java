@@ -0,0 +1,7 @@
+// a constant division by zero is not folded, so it still fails when it runs
+class Test {
+  public static void main(String[] args) {
+    int x = 1 / 0;
+    System.out.println(-1);
+  }
+}
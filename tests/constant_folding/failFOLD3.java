@@ -0,0 +1,7 @@
+// overflow of a folded product is left in the code too
+class Test {
+  public static void main(String[] args) {
+    int x = 65536 * 65536;
+    System.out.println(-1);
+  }
+}
@@ -0,0 +1,33 @@
+// folded constants give the values the program would compute
+class Test {
+  public static void main(String[] args) {
+    int x = 5;
+    check(3 * 4 == 12);
+    check(x * 1 + 0 == 5);
+    check(-(2 - 9) / 2 == 3);
+    check(x * 0 == 0);
+    if (!true) {
+      check(false);
+    } else if (1 + 1 == 2 && !false) {
+      System.out.println(1);
+    } else {
+      check(false);
+    }
+    while (false) {
+      check(false);
+    }
+    for (int i = 0; false; i = i + 1) {
+      check(false);
+    }
+    System.out.println(2);
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
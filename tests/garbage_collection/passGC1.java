@@ -0,0 +1,32 @@
+// run with BatchDriver --heap 64 --grow --gc: far more garbage than heap,
+// with a few live arrays that must survive every collection intact
+class Test {
+  public static void main(String[] args) {
+    int[] keep = new int[10];
+    for (int i = 0; i < keep.length; i = i + 1) {
+      keep[i] = i;
+    }
+    int i = 0;
+    while (i < 2000) {
+      int[] garbage = new int[20];
+      garbage[19] = i;
+      check(garbage[19] == i);
+      i = i + 1;
+    }
+    int sum = 0;
+    for (int j = 0; j < keep.length; j = j + 1) {
+      sum = sum + keep[j];
+    }
+    check(sum == 45);
+    System.out.println(sum);
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+// run with BatchDriver --heap 64 --grow --gc: a list that outgrows the heap,
+// built between allocations of garbage, keeps every node and value
+class Test {
+  public static void main(String[] args) {
+    Node head = null;
+    int i = 0;
+    while (i < 500) {
+      Node n = new Node();
+      n.value = i;
+      n.next = head;
+      head = n;
+      int[] garbage = new int[8];
+      garbage[0] = i;
+      i = i + 1;
+    }
+    int count = 0;
+    int sum = 0;
+    Node n = head;
+    while (n != null) {
+      count = count + 1;
+      sum = sum + n.value;
+      n = n.next;
+    }
+    check(count == 500);
+    check(sum == 124750);
+    check(head.value == 499);
+    System.out.println(count);
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
+
+class Node {
+  int value;
+  Node next;
+}
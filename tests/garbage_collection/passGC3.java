@@ -0,0 +1,50 @@
+// run with BatchDriver --heap 64 --grow --gc: objects reachable only from a
+// static field, an array of references and this survive being moved
+class Test {
+  static Box saved;
+
+  public static void main(String[] args) {
+    saved = new Box();
+    saved.value = 11;
+    Box[] boxes = new Box[5];
+    for (int i = 0; i < boxes.length; i = i + 1) {
+      Box b = new Box();
+      b.value = i + 1;
+      boxes[i] = b;
+    }
+    Box self = new Box();
+    self.value = 3;
+    int got = self.churn(boxes);
+    check(got == 3);
+    check(saved.value == 11);
+    int sum = 0;
+    for (int i = 0; i < boxes.length; i = i + 1) {
+      Box b = boxes[i];
+      sum = sum + b.value;
+    }
+    check(sum == 15);
+    System.out.println(sum);
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
+
+class Box {
+  int value;
+
+  // allocates garbage while only this and the arguments refer to the boxes
+  public int churn(Box[] boxes) {
+    for (int i = 0; i < 1000; i = i + 1) {
+      Box garbage = new Box();
+      garbage.value = i;
+    }
+    return value;
+  }
+}
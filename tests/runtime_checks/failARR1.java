@@ -0,0 +1,8 @@
+// storing past the end of an array fails
+class Test {
+  public static void main(String[] args) {
+    int[] a = new int[3];
+    a[3] = 1;
+    System.out.println(-1);
+  }
+}
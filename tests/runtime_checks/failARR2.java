@@ -0,0 +1,9 @@
+// storing at a negative index fails
+class Test {
+  public static void main(String[] args) {
+    int[] a = new int[3];
+    int i = 0 - 1;
+    a[i] = 1;
+    System.out.println(-1);
+  }
+}
@@ -0,0 +1,16 @@
+// storing into the word after an array, in a loop, fails before it reaches the next object
+class Test {
+  public static void main(String[] args) {
+    int[] a = new int[4];
+    A o = new A();
+    o.x = 7;
+    for (int i = 0; i <= a.length; i = i + 1) {
+      a[i] = 0 - 1;
+    }
+    System.out.println(-1);
+  }
+}
+
+class A {
+  int x;
+}
@@ -0,0 +1,15 @@
+// calling a method on null must fail before the method reads a field of this
+class Test {
+  public static void main(String[] args) {
+    A a = null;
+    System.out.println(a.get());
+  }
+}
+
+class A {
+  int x;
+
+  public int get() {
+    return x;
+  }
+}
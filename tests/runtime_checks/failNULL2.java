@@ -0,0 +1,18 @@
+// calling a method on null must fail before the method writes a field of this
+class Test {
+  static int s;
+
+  public static void main(String[] args) {
+    A a = null;
+    a.set(77);
+    System.out.println(s);
+  }
+}
+
+class A {
+  int x;
+
+  public void set(int v) {
+    x = v;
+  }
+}
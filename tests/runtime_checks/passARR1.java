@@ -0,0 +1,27 @@
+// stores within bounds leave the neighbouring object alone
+class Test {
+  public static void main(String[] args) {
+    int[] a = new int[4];
+    A o = new A();
+    o.x = 7;
+    for (int i = 0; i < a.length; i = i + 1) {
+      a[i] = i * 10;
+    }
+    check(a[0] == 0 && a[3] == 30);
+    check(o.x == 7);
+    System.out.println(a[3]);
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
+
+class A {
+  int x;
+}
@@ -0,0 +1,32 @@
+// methods on objects still read and write the fields of this
+class Test {
+  public static void main(String[] args) {
+    A a = new A();
+    a.set(77);
+    check(a.get() == 77);
+    a.x = a.x + 1;
+    check(a.get() == 78);
+    System.out.println(a.get());
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
+
+class A {
+  int x;
+
+  public void set(int v) {
+    x = v;
+  }
+
+  public int get() {
+    return x;
+  }
+}
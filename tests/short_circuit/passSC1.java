@@ -0,0 +1,29 @@
+// && and || leave exactly one value on the stack, so later locals keep theirs
+class Test {
+  public static void main(String[] args) {
+    int a = 3;
+    boolean b = a > 2 && a < 5;
+    int c = 1;
+    check(b);
+    check(c == 1);
+    boolean d = a < 2 || a > 5;
+    int e = 2;
+    check(!d);
+    check(e == 2);
+    boolean f = a > 2 && a > 5;
+    boolean g = a > 5 || a > 2;
+    int h = 3;
+    check(!f && g);
+    check(a == 3 && c == 1 && e == 2 && h == 3);
+    System.out.println(h);
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
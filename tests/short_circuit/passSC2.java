@@ -0,0 +1,38 @@
+// the right operand is only evaluated when the left does not decide
+class Test {
+  static int calls;
+
+  public static void main(String[] args) {
+    A n = null;
+    check(!(n != null && n.x == 1));
+    check(n == null || n.x == 1);
+    calls = 0;
+    boolean b = false && count();
+    check(!b && calls == 0);
+    b = true || count();
+    check(b && calls == 0);
+    b = true && count();
+    check(b && calls == 1);
+    b = false || count();
+    check(b && calls == 2);
+    System.out.println(calls);
+  }
+
+  static boolean count() {
+    calls = calls + 1;
+    return true;
+  }
+
+  // a wrong value prints -1 and stops the program, so the batch reports it
+  static void check(boolean ok) {
+    if (!ok) {
+      System.out.println(-1);
+      int[] stop = new int[0];
+      stop[0] = 0;
+    }
+  }
+}
+
+class A {
+  int x;
+}